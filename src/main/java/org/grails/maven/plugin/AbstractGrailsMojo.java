@@ -19,13 +19,14 @@ package org.grails.maven.plugin;
 import grails.util.GrailsNameUtils;
 import grails.util.Metadata;
 import groovy.lang.GString;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.*;
 import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -34,27 +35,43 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
-import org.apache.maven.project.artifact.MavenMetadataSource;
 import org.apache.maven.settings.Proxy;
 import org.apache.maven.settings.Settings;
-import org.apache.maven.shared.dependency.tree.DependencyNode;
 import org.apache.maven.shared.dependency.tree.DependencyTreeBuilder;
-import org.apache.maven.shared.dependency.tree.DependencyTreeBuilderException;
-import org.apache.maven.shared.dependency.tree.traversal.DependencyNodeVisitor;
 import org.codehaus.plexus.archiver.ArchiverException;
-import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
-import org.codehaus.plexus.logging.Logger;
-import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
 import org.grails.launcher.RootLoader;
+import org.grails.maven.plugin.tools.ClasspathUsageReport;
+import org.grails.maven.plugin.tools.CleanTargets;
 import org.grails.maven.plugin.tools.DecentGrailsLauncher;
+import org.grails.maven.plugin.tools.DuplicateClassScanner;
+import org.grails.maven.plugin.tools.FailFastTestListener;
+import org.grails.maven.plugin.tools.Fingerprints;
+import org.grails.maven.plugin.tools.ForkedGrailsLauncher;
+import org.grails.maven.plugin.tools.GrailsDependencyResolver;
+import org.grails.maven.plugin.tools.GrailsProject;
+import org.grails.maven.plugin.tools.GrailsResolutionWarmer;
 import org.grails.maven.plugin.tools.GrailsServices;
+import org.grails.maven.plugin.tools.GrailsTestSources;
+import org.grails.maven.plugin.tools.IndexedRootLoader;
+import org.grails.maven.plugin.tools.JUnitReports;
+import org.grails.maven.plugin.tools.PluginArchives;
+import org.grails.maven.plugin.tools.ScriptCache;
+import org.grails.maven.plugin.tools.SessionCache;
+import org.grails.maven.plugin.tools.TestShards;
+import org.grails.maven.plugin.tools.WarWriter;
 
 import java.io.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Common services for all Mojos using Grails.
@@ -68,7 +85,10 @@ import java.util.*;
  */
 public abstract class AbstractGrailsMojo extends AbstractMojo {
 
-  public static final String PLUGIN_PREFIX = "grails-";
+  public static final String PLUGIN_PREFIX = PluginArchives.PLUGIN_PREFIX;
+
+  private static final String WAR_EXPLODED = "grails.war.exploded";
+  private static final String WAR_EXPLODED_DIR = "grails.project.war.exploded.dir";
 
   private static final String GRAILS_PLUGIN_NAME_FORMAT = "plugins.%s:%s";
   private static final String GRAILS_PLUGIN_VERSION_PATTERN = "((def|String)\\s*version\\s*=\\s*(\"|'))(.*)(\"|')";
@@ -161,6 +181,18 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
   @Parameter(property = "project.remoteArtifactRepositories", readonly = true, required = true)
   private List<ArtifactRepository> remoteRepositories;
 
+  @Component
+  private RepositorySystem repositorySystem;
+
+  @Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
+  private RepositorySystemSession repositorySystemSession;
+
+  @Parameter(defaultValue = "${project.remoteProjectRepositories}", readonly = true)
+  private List<RemoteRepository> remoteProjectRepositories;
+
+  @Parameter(defaultValue = "${session}", readonly = true)
+  private MavenSession session;
+
   /**
    */
   @Component
@@ -174,7 +206,7 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
 
   /**
    */
-  @Parameter(defaultValue = "${user.home}/.grails/maven")
+  @Parameter(defaultValue = GrailsResolutionWarmer.DEFAULT_CENTRAL_PLUGIN_INSTALL_DIR)
   private File centralPluginInstallDir;
 
   /**
@@ -220,6 +252,150 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
 	@Parameter(property = "run.functionalTest")
 	protected boolean runFunctionalTests = true;
 
+	/**
+	 * Whether the unit tests and the integration/functional tests should be run at the same time, each in
+	 * its own forked JVM with its own test reports directory. The functional test goal then has nothing left to do.
+	 */
+	@Parameter(property = "run.parallelTestPhases")
+	protected boolean runTestPhasesInParallel = false;
+
+	/**
+	 * Extra arguments passed to the JVM when Grails is run in a forked JVM, e.g. "-Xmx1g".
+	 */
+	@Parameter(property = "run.forkArgLine")
+	protected String forkArgLine;
+
+	/**
+	 * Load Grails with a class loader that indexes which jars hold which packages, instead of searching every jar
+	 * for every class and resource. The index is kept in target/grails-classloader and rebuilt when the classpath
+	 * changes.
+	 */
+	@Parameter(property = "run.indexedClassLoader")
+	protected boolean indexedClassLoader = false;
+
+	/**
+	 * Record which artifacts Grails actually loads classes or resources from and write the ones it never touched,
+	 * by scope, to target/grails-classpath-usage/&lt;target&gt;.txt. Uses the indexed class loader, so a target Grails
+	 * forks a JVM of its own for (grails.project.fork) cannot be recorded and gets a warning instead.
+	 */
+	@Parameter(property = "run.recordClasspathUsage")
+	protected boolean recordClasspathUsage = false;
+
+	/**
+	 * Add the pom exclusions that would drop the unused artifacts to the classpath usage report.
+	 */
+	@Parameter(property = "run.suggestExclusions")
+	protected boolean suggestExclusions = false;
+
+	/**
+	 * Look for classes that are in more than one jar of the Grails classpath whenever it is resolved, and warn about
+	 * them. Cheap enough to leave on, see also the duplicate-classes goal.
+	 */
+	@Parameter(property = "run.checkDuplicateClasses")
+	protected boolean checkDuplicateClasses = false;
+
+	/**
+	 * Resolve from the local repository alone whenever it has everything the project needs. The last resolution is
+	 * recorded in target/grails-local-repository.txt and replayed while the dependencies are unchanged and all their
+	 * files are still in the local repository, so neither the dependency tree nor SNAPSHOT metadata is fetched. If
+	 * anything is missing the dependencies are resolved as usual, without needing -o, with artifacts already in the
+	 * local repository taken from there.
+	 */
+	@Parameter(property = "run.preferLocalRepository")
+	protected boolean preferLocalRepository = false;
+
+	/**
+	 * How many artifacts to resolve and plugins to extract at once. Dependency tree order is kept regardless.
+	 */
+	@Parameter(property = "run.resolverThreads", defaultValue = "1")
+	protected int resolverThreads = 1;
+
+	/**
+	 * How transitive dependencies are resolved: "legacy" walks the maven-dependency-tree with the Maven 2 artifact
+	 * collector, "aether" collects them with the repository system Maven itself uses, and "compare" does both, uses
+	 * the legacy result and reports how long each took and any artifact or scope they disagree on.
+	 */
+	@Parameter(property = "run.resolver", defaultValue = "legacy")
+	protected String resolver = "legacy";
+
+	/**
+	 * How many built POMs, and separately how many dependency metadata entries, are kept for the rest of the build
+	 * so that the modules of a reactor share them.
+	 */
+	@Parameter(property = "run.sessionCacheSize", defaultValue = "2000")
+	protected int sessionCacheSize = 2000;
+
+	/**
+	 * Keep the build scripts Grails compiles, its own and those of the project and its plugins, in
+	 * scriptCacheDirectory between builds, so that a clean build with the same scripts and Grails version does not
+	 * compile them again.
+	 */
+	@Parameter(property = "run.scriptCache", defaultValue = "true")
+	protected boolean scriptCache = true;
+
+	/**
+	 * Where the compiled build scripts are kept, see scriptCache.
+	 */
+	@Parameter(property = "run.scriptCacheDirectory", defaultValue = "${user.home}/.grails/script-cache")
+	protected File scriptCacheDirectory;
+
+	/**
+	 * Which tests to run, in the same form as Surefire's -Dtest: a comma separated list of class names or
+	 * patterns such as "BookControllerSpec,com.acme.**.*Service*,AuthorTests#testName". They are passed
+	 * on to Grails as TestApp target patterns.
+	 */
+	@Parameter(property = "test")
+	protected String testPatterns;
+
+	/**
+	 * Stop the Grails test run as soon as a test class has finished with a failure or error instead of running
+	 * the rest of the tests.
+	 */
+	@Parameter(property = "grails.test.failFast")
+	protected boolean failFast = false;
+
+	/**
+	 * Which shard of the tests to run, from 1 to shardCount. Together with shardCount this lets several CI nodes
+	 * each run a disjoint part of the test classes.
+	 */
+	@Parameter(property = "grails.test.shardIndex")
+	protected int shardIndex = 0;
+
+	/**
+	 * How many shards the test classes are split into. Every node must use the same count (and timings).
+	 */
+	@Parameter(property = "grails.test.shardCount")
+	protected int shardCount = 0;
+
+	/**
+	 * A directory of JUnit XML reports from an earlier run, used to balance the shards by how long each test
+	 * class took. Without it every class counts the same.
+	 */
+	@Parameter(property = "grails.test.shardTimings")
+	protected File shardTimings;
+
+	/**
+	 * Let Grails only stage the WAR and zip it up in the plugin, compressing entries on all cores and storing
+	 * already compressed content (jars, images, gz files) as it is. Archives needing Zip64 (over 4GB or 65535
+	 * entries) are not supported in this mode.
+	 */
+	@Parameter(property = "grails.war.parallel")
+	protected boolean parallelWar = false;
+
+	/**
+	 * The compression level used when grails.war.parallel is on, from 0 (store only) to 9. Lower levels make for
+	 * much faster local builds. -1 is the Deflater default.
+	 */
+	@Parameter(property = "grails.war.compressionLevel")
+	protected int warCompressionLevel = -1;
+
+	/**
+	 * Update the WAR written by the last build instead of writing it from scratch: entries whose content did not
+	 * change are copied from it without being compressed again. Implies grails.war.parallel.
+	 */
+	@Parameter(property = "grails.war.incremental")
+	protected boolean incrementalWar = false;
+
 	/**
 	 * When running using this plugin ONLY, what jars should be inserted into the front of the classpath
 	 * to ensure they get loaded first.
@@ -376,6 +552,18 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
   private static URL[] classpath;
   private static String grailsHomePath;
 
+  private static final String[] FORKABLE_TARGETS = {"TestApp", "RunApp", "RunWar", "Console"};
+
+  /**
+   * The targets the last Grails run in this JVM found Grails 2.3+ forks itself, see {@link #isForkedByGrails(String)}.
+   */
+  private final Set<String> grailsForkedTargets = new HashSet<String>();
+
+  /**
+   * The project property the classpath fingerprint is published as, for other plugins and profiles to key on.
+   */
+  public static final String CLASSPATH_FINGERPRINT_PROPERTY = "grails.classpath.fingerprint";
+
   private void resolveClasspath() throws MojoExecutionException {
 	  parsePatchArtifacts();
 
@@ -383,6 +571,8 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
 
     resolvedArtifacts = collectAllProjectArtifacts();
 
+    getLog().debug("Session cache: " + getSessionCache().getHits() + " hits, " + getSessionCache().getMisses() + " misses");
+
 
     /*
     * Remove any Grails plugins that may be in the resolved artifact set.  This is because we
@@ -391,10 +581,7 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
     */
     pluginArtifacts = removePluginArtifacts(resolvedArtifacts);
 
-    pluginDirectories = new ArrayList<File>();
-
-    for(Artifact artifact : pluginArtifacts)
-      pluginDirectories.add(getPluginDirAndInstallIfNecessary(artifact));
+    pluginDirectories = installPlugins(pluginArtifacts);
 
     if (getLog().isInfoEnabled()) {
       for(File f : pluginDirectories) {
@@ -404,9 +591,323 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
 
     classpath = generateGrailsExecutionClasspath(resolvedArtifacts);
 
+    project.getProperties().setProperty(CLASSPATH_FINGERPRINT_PROPERTY, fingerprintClasspath());
+    writeClasspathFile();
+
+    if (checkDuplicateClasses)
+      reportDuplicateClasses(findDuplicateClasses());
+
     System.gc();
   }
 
+  /**
+   * Extracts the plugins that are not installed yet, resolverThreads at a time - each goes to its own directory.
+   *
+   * @return the plugin directories, in the order of the plugins.
+   */
+  private List<File> installPlugins(Set<Artifact> plugins) throws MojoExecutionException {
+    List<File> directories = new ArrayList<File>();
+
+    if (resolverThreads <= 1 || plugins.size() <= 1) {
+      for (Artifact plugin : plugins)
+        directories.add(getPluginDirAndInstallIfNecessary(plugin));
+
+      return directories;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(resolverThreads, plugins.size()));
+    List<Future<File>> installs = new ArrayList<Future<File>>();
+
+    try {
+      for (final Artifact plugin : plugins) {
+        installs.add(executor.submit(new Callable<File>() {
+          public File call() throws MojoExecutionException {
+            return getPluginDirAndInstallIfNecessary(plugin);
+          }
+        }));
+      }
+
+      for (Future<File> install : installs)
+        directories.add(install.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while installing plugins", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof MojoExecutionException)
+        throw (MojoExecutionException) e.getCause();
+      throw new MojoExecutionException("Unable to install plugins", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    return directories;
+  }
+
+  /**
+   * @return the classes in more than one entry of the Grails classpath, by class name.
+   */
+  protected Map<String, DuplicateClassScanner.Duplicate> findDuplicateClasses() throws MojoExecutionException {
+    resolveClasspathIfNecessary();
+
+    List<File> files = new ArrayList<File>();
+
+    try {
+      for (URL url : classpath) {
+        files.add(new File(url.toURI()));
+      }
+
+      long start = System.currentTimeMillis();
+      Map<String, DuplicateClassScanner.Duplicate> duplicates = new DuplicateClassScanner(0).scan(files);
+      getLog().debug("Scanned " + files.size() + " classpath entries for duplicate classes in " + (System.currentTimeMillis() - start) + "ms");
+
+      return duplicates;
+    } catch (URISyntaxException e) {
+      throw new MojoExecutionException("Unable to scan the Grails classpath", e);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to scan the Grails classpath", e);
+    }
+  }
+
+  /**
+   * Warns about duplicate classes, one line per set of artifacts sharing classes, and writes the full list to
+   * target/grails-duplicate-classes.txt.
+   *
+   * @return the number of duplicate classes whose copies differ.
+   */
+  protected int reportDuplicateClasses(Map<String, DuplicateClassScanner.Duplicate> duplicates) throws MojoExecutionException {
+    File reportFile = new File(project.getBuild().getDirectory(), "grails-duplicate-classes.txt");
+    int conflicts = 0;
+
+    Map<File, String> artifactNames = new HashMap<File, String>();
+    for (Artifact artifact : resolvedArtifacts) {
+      if (artifact.getFile() != null)
+        artifactNames.put(artifact.getFile().getAbsoluteFile(), artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion());
+    }
+
+    try {
+      reportFile.getParentFile().mkdirs();
+      PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8"));
+
+      try {
+        for (Map.Entry<List<File>, List<DuplicateClassScanner.Duplicate>> group : DuplicateClassScanner.byOwners(duplicates).entrySet()) {
+          StringBuilder owners = new StringBuilder();
+          for (File owner : group.getKey()) {
+            if (owners.length() > 0) owners.append(", ");
+            owners.append(artifactNames.containsKey(owner.getAbsoluteFile()) ? artifactNames.get(owner.getAbsoluteFile()) : owner.getName());
+          }
+
+          int different = 0;
+          writer.print(owners + "\n");
+          for (DuplicateClassScanner.Duplicate duplicate : group.getValue()) {
+            writer.print("  " + duplicate.getClassName() + (duplicate.isIdentical() ? "" : " (differs)") + "\n");
+            if (!duplicate.isIdentical()) different++;
+          }
+
+          conflicts += different;
+          getLog().warn(group.getValue().size() + " classes, e.g. " + group.getValue().get(0).getClassName() + ", are in " + owners +
+            (different == 0 ? " (identical copies)" : " (" + different + " differ, the first one listed wins)"));
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to write " + reportFile, e);
+    }
+
+    if (!duplicates.isEmpty())
+      getLog().warn(duplicates.size() + " duplicate classes on the Grails classpath, see " + reportFile);
+
+    return conflicts;
+  }
+
+  /**
+   * Resolves the Grails classpath for this project unless that has already been done, as runGrails would.
+   */
+  protected void resolveClasspathIfNecessary() throws MojoExecutionException {
+    if (!alreadyLoaderClasspathForArtifact())
+      doOncePerArtifact();
+  }
+
+  /**
+   * @return the artifacts Grails is run with, resolving them first if necessary. Plugins are not included.
+   */
+  protected Set<Artifact> getResolvedArtifacts() throws MojoExecutionException {
+    resolveClasspathIfNecessary();
+
+    return resolvedArtifacts;
+  }
+
+  /**
+   * @return the files of the compile and runtime scoped artifacts, the ones Grails packages into WEB-INF/lib.
+   */
+  protected List<File> getRuntimeDependencyFiles() throws MojoExecutionException {
+    resolveClasspathIfNecessary();
+
+    return artifactsToFiles(filterArtifacts(resolvedArtifacts, "compile", "runtime"));
+  }
+
+  /**
+   * @return the Grails plugins the project depends on.
+   */
+  protected Set<Artifact> getPluginArtifacts() throws MojoExecutionException {
+    resolveClasspathIfNecessary();
+
+    return pluginArtifacts;
+  }
+
+  /**
+   * @return the directories the Grails plugins the project depends on are installed in.
+   */
+  protected List<File> getPluginDirectories() throws MojoExecutionException {
+    resolveClasspathIfNecessary();
+
+    return pluginDirectories;
+  }
+
+  protected String getGrailsVersion() {
+    return grailsVersion;
+  }
+
+  /**
+   * A fingerprint of the Grails classpath: each entry in classpath order (path, size and last modified time), the
+   * plugins and the Grails version. The classpath order is stable, so the fingerprint only changes when the
+   * classpath does.
+   */
+  private String fingerprintClasspath() throws MojoExecutionException {
+    MessageDigest digest = Fingerprints.newDigest();
+    Fingerprints.update(digest, "grails|" + grailsVersion);
+
+    for (URL url : classpath) {
+      File file = urlToFile(url);
+      Fingerprints.update(digest, file == null ? url.toString() : file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified());
+    }
+
+    for (File pluginDirectory : pluginDirectories) {
+      Fingerprints.update(digest, "plugin|" + pluginDirectory.getAbsolutePath());
+    }
+
+    return Fingerprints.hex(digest.digest());
+  }
+
+  /**
+   * Writes the Grails classpath to target/grails-classpath.txt, one entry per line in classpath order.
+   */
+  private void writeClasspathFile() throws MojoExecutionException {
+    File classpathFile = new File(project.getBuild().getDirectory(), "grails-classpath.txt");
+
+    try {
+      classpathFile.getParentFile().mkdirs();
+      PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(classpathFile), "UTF-8"));
+
+      try {
+        for (URL url : classpath) {
+          File file = urlToFile(url);
+          writer.print((file == null ? url.toString() : file.getAbsolutePath()) + "\n");
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to write " + classpathFile, e);
+    }
+  }
+
+  private static File urlToFile(URL url) {
+    try {
+      return "file".equals(url.getProtocol()) ? new File(url.toURI()) : null;
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Puts the build scripts compiled for the project's scripts back where Grails looks for them.
+   *
+   * @return the cache to store newly compiled scripts in afterwards, or null if there is none.
+   */
+  private ScriptCache restoreCompiledScripts(File projectWorkDir) {
+    if (!scriptCache || scriptCacheDirectory == null) return null;
+
+    List<File> scriptRoots = new ArrayList<File>();
+    scriptRoots.add(getBasedir());
+    scriptRoots.addAll(pluginDirectories);
+    if (grailsHome != null) scriptRoots.add(grailsHome);
+    scriptRoots.add(new File(System.getProperty("user.home"), ".grails"));
+
+    try {
+      ScriptCache cache = new ScriptCache(scriptCacheDirectory, ScriptCache.key(getGrailsVersion(), scriptRoots), projectWorkDir);
+      getLog().debug("Restored " + cache.restore() + " compiled build scripts");
+      return cache;
+    } catch (IOException e) {
+      getLog().warn("Unable to restore the compiled build scripts: " + e);
+      return null;
+    }
+  }
+
+  private void storeCompiledScripts(ScriptCache cache) {
+    if (cache == null) return;
+
+    try {
+      getLog().debug("Kept " + cache.store() + " newly compiled build scripts");
+    } catch (IOException e) {
+      getLog().warn("Unable to keep the compiled build scripts: " + e);
+    }
+  }
+
+  private void recordForkedTargets(DecentGrailsLauncher launcher) {
+    grailsForkedTargets.clear();
+
+    for (String target : FORKABLE_TARGETS) {
+      if (launcher.isForked(target))
+        grailsForkedTargets.add(target);
+    }
+  }
+
+  /**
+   * Whether Grails runs the target in a JVM of its own (grails.project.fork in BuildConfig.groovy), as the last
+   * Grails run in this JVM, e.g. the one of {@link #prepareForForks()}, read the settings. Such a target
+   * starts a further JVM from whatever runs it, which the plugin's forks have to allow for.
+   *
+   * @param targetName the Grails target, e.g. "TestApp".
+   */
+  protected boolean isForkedByGrails(String targetName) {
+    return grailsForkedTargets.contains(targetName);
+  }
+
+  /**
+   * Records what a Grails Clean would delete as the settings of this run have it, for {@link #getCleanTargets()}.
+   * Failing to is not worth failing the build over, a clean without a record works from the conventions.
+   */
+  private void recordCleanTargets(DecentGrailsLauncher launcher, Object settings) {
+    File targetDir = new File(project.getBuild().getDirectory());
+
+    try {
+      CleanTargets targets = CleanTargets.fromConventions(getBasedir(), launcher.getProjectWorkDir(),
+        (File) invokeMethod(settings, "getProjectWarFile", new Class[0], new Object[0]));
+      targets.addDirectory(launcher.getClassesDir());
+      targets.addDirectory(launcher.getTestClassesDir());
+      targets.addDirectory(launcher.getResourcesDir());
+      targets.addDirectory((File) invokeMethod(settings, "getPluginClassesDir", new Class[0], new Object[0]));
+      targets.setTestReportsDir(launcher.getTestReportsDir());
+
+      for (File pluginDirectory : pluginDirectories) {
+        targets.addPluginDirectory(pluginDirectory);
+      }
+
+      targets.write(new File(targetDir, CleanTargets.RECORD_FILE));
+    } catch (Exception e) {
+      getLog().debug("Unable to record what a clean would delete", e);
+    }
+  }
+
+  /**
+   * @return what a Grails Clean would delete, as the last Grails run recorded it, or null if there is no record.
+   *         Without one the plugins, and so their clean hooks, are not known.
+   */
+  protected CleanTargets getCleanTargets() throws IOException {
+    return CleanTargets.read(new File(project.getBuild().getDirectory(), CleanTargets.RECORD_FILE));
+  }
+
   private boolean alreadyLoaderClasspathForArtifact() {
     return project.getArtifactId().equalsIgnoreCase(lastArtifactId) && project.getGroupId().equalsIgnoreCase(lastGroupId);
   }
@@ -494,9 +995,25 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
 
     InputStream currentIn = System.in;
     PrintStream currentOutput = System.out;
+    String previousListeners = null;
 
     try {
-      RootLoader rootLoader = new RootLoader(addBinaryPluginWorkaround(classpath));
+      URL[] grailsClasspath = addBinaryPluginWorkaround(classpath);
+
+      if (isFailFast(targetName)) {
+        // the listener is created by Grails, so it has to be visible to (and loaded by) the root loader
+        URL[] withListener = new URL[grailsClasspath.length + 1];
+        withListener[0] = codeSourceOf(FailFastTestListener.class).toURI().toURL();
+        System.arraycopy(grailsClasspath, 0, withListener, 1, grailsClasspath.length);
+        grailsClasspath = withListener;
+
+        previousListeners = System.getProperty(FailFastTestListener.BUILD_LISTENERS);
+        System.setProperty(FailFastTestListener.BUILD_LISTENERS, failFastListeners());
+        System.clearProperty(FailFastTestListener.ABORTED_AT);
+      }
+
+      RootLoader rootLoader = indexedClassLoader || recordClasspathUsage ?
+        IndexedRootLoader.create(grailsClasspath, getClassLoaderIndexDirectory()) : new RootLoader(grailsClasspath);
 
       // see if log4j is there and if so, initialize it
       try {
@@ -506,6 +1023,8 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
         getLog().info("No log4j available, good!");
       }
 
+      boolean targetForked = false;
+
       try {
         final DecentGrailsLauncher launcher = new DecentGrailsLauncher(rootLoader, grailsHomePath, basedir.getAbsolutePath());
         launcher.setPlainOutput(true);
@@ -524,16 +1043,7 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
 
         installGrailsPlugins(pluginDirectories, launcher, settingsField, rootLoader.loadClass("grails.util.AbstractBuildSettings"));
 
-        // If the command is running in non-interactive mode, we
-        // need to pass on the relevant argument.
-        if (this.nonInteractive) {
-          args = (args != null) ? "--non-interactive " + args : "--non-interactive ";
-        }
-
-        // consuming the standard output after execution via Maven.
-        args = (args != null) ? "--plain-output " + args : "--plain-output";
-        args = (args != null) ? "--stacktrace " + args : "--stacktrace";
-        args = (args != null) ? "--verboseCompile " + args : "--verboseCompile";
+        args = decorateArgs(args);
 
         if (env == null)
           System.clearProperty("grails.env");
@@ -547,38 +1057,503 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
 	      if ("true".equals(System.getProperty("print.grails.settings")) || "ideaprintprojectsettings".equalsIgnoreCase(targetName)) {
 		      printIntellijIDEASettings(launcher, settingsField, pluginArtifacts);
 	      } else {
+		      ScriptCache compiledScripts = restoreCompiledScripts(launcher.getProjectWorkDir());
 
 		      if ("interactive".equals(targetName))
 	          retval = launcher.launch("", "", env);
 	        else
 	          retval = launcher.launch(targetName, args, env);
 
+	        // the scripts compiled just as well when the target itself failed
+	        storeCompiledScripts(compiledScripts);
+	        targetForked = launcher.isForked(targetName);
+	        recordForkedTargets(launcher);
 
 	        if (retval != 0) {
+	          if (isFailFast(targetName) && failFastAbort() != null)
+	            throw failFastAbort();
+
 	          throw new MojoExecutionException("Grails returned non-zero value: " + retval);
 	        }
 
+	        recordCleanTargets(launcher, settingsField.get(launcher));
 	      }
       } catch (final MojoExecutionException ex) {
         // Simply rethrow it.
         throw ex;
       } catch (final Exception ex) {
+        if (isFailFast(targetName) && failFastAbort() != null)
+          throw failFastAbort();
+
         getLog().error(ex);
 
         throw new MojoExecutionException("Unable to start Grails", ex);
+      } catch (final Error err) {
+        if (isFailFast(targetName) && failFastAbort() != null)
+          throw failFastAbort();
+
+        throw err;
+      }
+
+      if (recordClasspathUsage && rootLoader instanceof IndexedRootLoader) {
+        if (targetForked)
+          getLog().warn(ClasspathUsageReport.forkedTargetMessage(targetName));
+        else
+          writeClasspathUsageReport(targetName, ((IndexedRootLoader) rootLoader).getUsedFiles());
       }
 
       rootLoader = null;
     } catch (MalformedURLException mfe) {
       throw new MojoExecutionException("Unable to start Grails", mfe);
+    } catch (IOException ioe) {
+      throw new MojoExecutionException("Unable to index the Grails classpath", ioe);
     } finally {
       System.setIn(currentIn);
       System.setOut(currentOutput);
+
+      if (isFailFast(targetName)) {
+        if (previousListeners == null)
+          System.clearProperty(FailFastTestListener.BUILD_LISTENERS);
+        else
+          System.setProperty(FailFastTestListener.BUILD_LISTENERS, previousListeners);
+        System.clearProperty(FailFastTestListener.ABORTED_AT);
+      }
     }
 
     System.gc(); // try and help with memory issues
   }
 
+  private File getClassLoaderIndexDirectory() {
+    return new File(project.getBuild().getDirectory(), "grails-classloader");
+  }
+
+  /**
+   * Adds the TestApp target patterns selected with -Dtest to the arguments for a test phase.
+   *
+   * @param phaseArgs the phase arguments, e.g. "--unit", may be null.
+   * @return the arguments to pass to TestApp, null if there are none.
+   */
+  protected String testAppArgs(String phaseArgs) throws MojoExecutionException {
+    StringBuilder args = new StringBuilder(phaseArgs == null ? "" : phaseArgs);
+
+    List<String> targetPatterns = isSharding() ? shardTargetPatterns(phaseArgs) : GrailsTestSources.toTargetPatterns(testPatterns);
+
+    for (String targetPattern : targetPatterns) {
+      if (args.length() > 0)
+        args.append(' ');
+      args.append(targetPattern);
+    }
+
+    return args.length() == 0 ? null : args.toString();
+  }
+
+  protected boolean isSharding() throws MojoExecutionException {
+    if (shardCount <= 1 && shardIndex <= 1)
+      return false;
+
+    if (shardIndex < 1 || shardIndex > shardCount)
+      throw new MojoExecutionException("grails.test.shardIndex must be between 1 and grails.test.shardCount (" + shardCount + "), not " + shardIndex);
+
+    return true;
+  }
+
+  /**
+   * Whether this node's shard has nothing to run for a test phase. TestApp without target patterns runs
+   * every test, so the phase has to be skipped altogether in that case.
+   *
+   * @param phaseArgs the phase arguments as for {@link #testAppArgs(String)}.
+   */
+  protected boolean isEmptyShard(String phaseArgs) throws MojoExecutionException {
+    if (isSharding() && shardTargetPatterns(phaseArgs).isEmpty()) {
+      getLog().info("Shard " + shardIndex + " of " + shardCount + " has no tests for " + (phaseArgs == null ? "any phase" : phaseArgs) + ", skipping.");
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * The test classes of the given phases (test/unit, test/integration, test/functional) that this node should run:
+   * narrowed down by -Dtest, and to this node's share when sharding. Classes are selected as a whole, so
+   * Class#method patterns select the class.
+   */
+  protected List<String> selectTestClasses(String... phases) throws MojoExecutionException {
+    List<String> classNames = matchingTestClasses(Arrays.asList(phases));
+
+    if (!isSharding())
+      return classNames;
+
+    List<String> shard = shardOf(classNames);
+    List<String> selected = new ArrayList<String>();
+
+    for (String className : classNames) {
+      if (shard.contains(GrailsTestSources.toTargetPattern(className)))
+        selected.add(className);
+    }
+
+    return selected;
+  }
+
+  private List<String> shardTargetPatterns(String phaseArgs) throws MojoExecutionException {
+    List<String> phases = new ArrayList<String>();
+
+    for (String phase : new String[]{"unit", "integration", "functional"}) {
+      if (phaseArgs == null || phaseArgs.contains("--" + phase))
+        phases.add(phase);
+    }
+
+    return shardOf(matchingTestClasses(phases));
+  }
+
+  private List<String> matchingTestClasses(List<String> phases) {
+    List<String> classNames = new ArrayList<String>();
+
+    for (String phase : phases) {
+      classNames.addAll(GrailsTestSources.findTestClasses(new File(getBasedir(), "test/" + phase)));
+    }
+
+    return GrailsTestSources.selectTestClasses(classNames, testPatterns);
+  }
+
+  private List<String> shardOf(List<String> classNames) {
+    Map<String, Double> timings = shardTimings == null ? Collections.<String, Double>emptyMap() : JUnitReports.readTimings(shardTimings);
+
+    return TestShards.partition(classNames, timings, shardCount).get(shardIndex - 1);
+  }
+
+  private boolean isFailFast(String targetName) {
+    return failFast && "TestApp".equals(targetName);
+  }
+
+  private String failFastListeners() {
+    String listeners = System.getProperty(FailFastTestListener.BUILD_LISTENERS);
+
+    return listeners == null || listeners.trim().length() == 0 ? FailFastTestListener.class.getName() : listeners + "," + FailFastTestListener.class.getName();
+  }
+
+  /**
+   * @return the failure to report if the fail fast listener stopped the test run, otherwise null.
+   */
+  private MojoExecutionException failFastAbort() {
+    String abortedAt = System.getProperty(FailFastTestListener.ABORTED_AT);
+
+    return abortedAt == null ? null : new MojoExecutionException("Grails tests failed in " + abortedAt + ", remaining tests were not run (grails.test.failFast)");
+  }
+
+  /**
+   * Runs the Grails War target, or with grails.war.parallel or grails.war.incremental has Grails stage the WAR in
+   * target/war-staging and writes the archive itself.
+   *
+   * @param warFile the WAR to create, or null for wherever Grails puts it by default.
+   */
+  protected void runGrailsWar(File warFile) throws MojoExecutionException {
+    if (!parallelWar && !incrementalWar) {
+      runGrails("War", warFile == null ? null : warFile.toString());
+      return;
+    }
+
+    if (warFile == null) {
+      GrailsProject descriptor = getGrailsServices().readProjectDescriptor();
+      warFile = new File(project.getBuild().getDirectory(), descriptor.getAppName() + "-" + descriptor.getAppVersion() + ".war");
+    }
+
+    File stagingDir = new File(project.getBuild().getDirectory(), "war-staging");
+
+    try {
+      FileUtils.deleteDirectory(stagingDir);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to clean " + stagingDir, e);
+    }
+
+    runGrailsExploded("War", warFile.toString(), stagingDir);
+
+    try {
+      long start = System.currentTimeMillis();
+      WarWriter writer = new WarWriter(warCompressionLevel, 0);
+      File manifestFile = incrementalWar ? new File(project.getBuild().getDirectory(), "grails-war/" + warFile.getName() + ".entries") : null;
+
+      if (manifestFile != null)
+        manifestFile.getParentFile().mkdirs();
+
+      int entries = writer.write(stagingDir, warFile, manifestFile);
+
+      getLog().info("Wrote " + entries + " entries to " + warFile + " in " + (System.currentTimeMillis() - start) + "ms" +
+        (incrementalWar ? ", " + writer.getReusedEntries() + " unchanged entries copied from the previous WAR" : ""));
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to write " + warFile, e);
+    }
+  }
+
+  /**
+   * Runs a Grails target that builds a WAR with Grails told to leave it exploded in the given directory.
+   */
+  protected void runGrailsExploded(String targetName, String args, File explodedDir) throws MojoExecutionException {
+    String previousExploded = System.getProperty(WAR_EXPLODED);
+    String previousExplodedDir = System.getProperty(WAR_EXPLODED_DIR);
+
+    try {
+      System.setProperty(WAR_EXPLODED, "true");
+      System.setProperty(WAR_EXPLODED_DIR, explodedDir.getAbsolutePath());
+
+      runGrails(targetName, args);
+    } finally {
+      restoreSystemProperty(WAR_EXPLODED, previousExploded);
+      restoreSystemProperty(WAR_EXPLODED_DIR, previousExplodedDir);
+    }
+  }
+
+  private static void restoreSystemProperty(String name, String value) {
+    if (value == null)
+      System.clearProperty(name);
+    else
+      System.setProperty(name, value);
+  }
+
+  private String decorateArgs(String args) {
+    // If the command is running in non-interactive mode, we
+    // need to pass on the relevant argument.
+    if (this.nonInteractive) {
+      args = (args != null) ? "--non-interactive " + args : "--non-interactive ";
+    }
+
+    // consuming the standard output after execution via Maven.
+    args = (args != null) ? "--plain-output " + args : "--plain-output";
+    args = (args != null) ? "--stacktrace " + args : "--stacktrace";
+    args = (args != null) ? "--verboseCompile " + args : "--verboseCompile";
+
+    return args;
+  }
+
+  /**
+   * Starts the requested Grails target in a JVM of its own and returns without waiting for it. The
+   * classpath is resolved exactly as for {@link #runGrails(String, String)}, but everything Grails prints
+   * goes to target/grails-fork/&lt;name&gt;.log rather than the console so that several forks can run at once.
+   *
+   * @param name           A name for this fork, unique within the build. Used for the configuration and log files.
+   * @param targetName     The name of the Grails target to execute.
+   * @param args           String of arguments to be passed to the executed Grails target.
+   * @param testReportsDir Where the fork should write its test reports, or null for the Grails default.
+   * @return the running process
+   * @throws MojoExecutionException if the classpath cannot be resolved or the JVM cannot be started.
+   */
+  protected Process forkGrails(String name, String targetName, String args, File testReportsDir) throws MojoExecutionException {
+    return forkGrails(name, targetName, args, testReportsDir, Collections.<String, String>emptyMap());
+  }
+
+  /**
+   * As {@link #forkGrails(String, String, String, File)}, additionally setting the given system properties in the
+   * forked JVM.
+   */
+  protected Process forkGrails(String name, String targetName, String args, File testReportsDir,
+                               Map<String, String> systemProperties) throws MojoExecutionException {
+    if (!alreadyLoaderClasspathForArtifact())
+      doOncePerArtifact();
+
+    syncAppVersion();
+
+    final File targetDir = new File(project.getBuild().getDirectory());
+    final File forkDir = new File(targetDir, "grails-fork");
+    forkDir.mkdirs();
+
+    Properties config = new Properties();
+
+    try {
+      List<URL> grailsClasspath = new ArrayList<URL>(Arrays.asList(addBinaryPluginWorkaround(classpath)));
+
+      if (isFailFast(targetName)) {
+        grailsClasspath.add(0, codeSourceOf(FailFastTestListener.class).toURI().toURL());
+        config.setProperty(ForkedGrailsLauncher.SYSTEM_PROPERTY_PREFIX + FailFastTestListener.BUILD_LISTENERS, failFastListeners());
+      }
+
+      config.setProperty(ForkedGrailsLauncher.CLASSPATH, urlsToPath(grailsClasspath));
+    } catch (Exception e) {
+      throw new MojoExecutionException("Failed to create classpath for forked Grails execution.", e);
+    }
+
+    if (grailsHomePath != null)
+      config.setProperty(ForkedGrailsLauncher.GRAILS_HOME, grailsHomePath);
+    config.setProperty(ForkedGrailsLauncher.BASEDIR, basedir.getAbsolutePath());
+    config.setProperty(ForkedGrailsLauncher.TARGET, targetName);
+    config.setProperty(ForkedGrailsLauncher.ARGS, decorateArgs(args));
+    if (env != null)
+      config.setProperty(ForkedGrailsLauncher.ENV, env);
+
+    if ((args != null && args.contains("--run-with-test-dependencies")) || runWithTestDependencies) {
+      String artifacts = filesToPath(artifactsToFiles(filterArtifacts(resolvedArtifacts, "compile", "runtime", "test")));
+      config.setProperty(ForkedGrailsLauncher.COMPILE_DEPENDENCIES, artifacts);
+      config.setProperty(ForkedGrailsLauncher.RUNTIME_DEPENDENCIES, artifacts);
+      config.setProperty(ForkedGrailsLauncher.TEST_DEPENDENCIES, artifacts);
+    } else {
+      config.setProperty(ForkedGrailsLauncher.COMPILE_DEPENDENCIES, filesToPath(artifactsToFiles(filterArtifacts(resolvedArtifacts, "compile"))));
+      config.setProperty(ForkedGrailsLauncher.RUNTIME_DEPENDENCIES, filesToPath(artifactsToFiles(filterArtifacts(resolvedArtifacts, "compile", "runtime"))));
+      config.setProperty(ForkedGrailsLauncher.TEST_DEPENDENCIES, filesToPath(artifactsToFiles(filterArtifacts(resolvedArtifacts, "compile", "runtime", "test"))));
+    }
+    config.setProperty(ForkedGrailsLauncher.BUILD_DEPENDENCIES, filesToPath(artifactsToFiles(resolvedArtifacts)));
+
+    // each fork compiles, packages and serves from a copy of its own, so that forks running at the same time
+    // never write the class files or resources another one is reading
+    final File forkWorkDir = new File(forkDir, name);
+    try {
+      copyWorkDirForFork(targetDir, forkWorkDir);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to set up the work directory of fork " + name, e);
+    }
+
+    config.setProperty(ForkedGrailsLauncher.PROJECT_WORK_DIR, forkWorkDir.getAbsolutePath());
+    config.setProperty(ForkedGrailsLauncher.CLASSES_DIR, new File(forkWorkDir, "classes").getAbsolutePath());
+    config.setProperty(ForkedGrailsLauncher.TEST_CLASSES_DIR, new File(forkWorkDir, "test-classes").getAbsolutePath());
+    config.setProperty(ForkedGrailsLauncher.RESOURCES_DIR, new File(forkWorkDir, "resources").getAbsolutePath());
+    config.setProperty(ForkedGrailsLauncher.PROJECT_PLUGINS_DIR, pluginsDir.getAbsolutePath());
+    if (testReportsDir != null)
+      config.setProperty(ForkedGrailsLauncher.TEST_REPORTS_DIR, testReportsDir.getAbsolutePath());
+    config.setProperty(ForkedGrailsLauncher.PLUGIN_DIRECTORIES, filesToPath(pluginDirectories));
+    if (indexedClassLoader || recordClasspathUsage)
+      config.setProperty(ForkedGrailsLauncher.CLASSLOADER_INDEX_DIR, getClassLoaderIndexDirectory().getAbsolutePath());
+    if (recordClasspathUsage) {
+      File usageFile = getForkClasspathUsageFile(name);
+      usageFile.delete();
+      config.setProperty(ForkedGrailsLauncher.CLASSPATH_USAGE_FILE, usageFile.getAbsolutePath());
+    }
+
+    for (String property : new String[]{"grails.console.enable.terminal", "grails.console.enable.interactive", "grails.server.factory"}) {
+      if (System.getProperty(property) != null)
+        config.setProperty(ForkedGrailsLauncher.SYSTEM_PROPERTY_PREFIX + property, System.getProperty(property));
+    }
+    for (Map.Entry<String, String> property : systemProperties.entrySet()) {
+      config.setProperty(ForkedGrailsLauncher.SYSTEM_PROPERTY_PREFIX + property.getKey(), property.getValue());
+    }
+
+    File configFile = new File(forkDir, name + ".properties");
+    File logFile = new File(forkDir, name + ".log");
+
+    try {
+      FileOutputStream out = new FileOutputStream(configFile);
+      try {
+        config.store(out, "Grails fork " + name + " for " + targetName);
+      } finally {
+        out.close();
+      }
+
+      List<String> command = new ArrayList<String>();
+      command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getAbsolutePath());
+      if (forkArgLine != null && forkArgLine.trim().length() > 0)
+        command.addAll(Arrays.asList(forkArgLine.trim().split("\\s+")));
+      command.add("-cp");
+      command.add(filesToPath(Arrays.asList(codeSourceOf(ForkedGrailsLauncher.class), codeSourceOf(RootLoader.class))));
+      command.add(ForkedGrailsLauncher.class.getName());
+      command.add(configFile.getAbsolutePath());
+
+      getLog().info("Forking grails -Dgrails.env=" + (env==null?"dev":env) + " " + targetName.toLowerCase() + " " + args + " (output in " + logFile.getAbsolutePath() + ")");
+
+      ProcessBuilder builder = new ProcessBuilder(command);
+      builder.directory(basedir);
+      builder.redirectErrorStream(true);
+      builder.redirectOutput(logFile);
+
+      return builder.start();
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to fork Grails for " + name, e);
+    }
+  }
+
+  /**
+   * Compiles and packages the application once in this JVM before forks are started, so that the copy each fork
+   * starts from is up to date and the forks only compile their own tests.
+   */
+  protected void prepareForForks() throws MojoExecutionException {
+    runGrails("Package");
+  }
+
+  private static final String[] FORK_WORK_DIRS = {"classes", "test-classes", "resources", "plugin-classes", "gspcompile", ScriptCache.DIRECTORY_NAME};
+
+  /**
+   * Copies what Grails compiled and packaged into the fork's work directory. Copies rather than hard links, as
+   * Grails rewrites files such as web.xml in place. The last modified times are kept, so the fork finds them up to
+   * date.
+   */
+  private static void copyWorkDirForFork(File targetDir, File forkWorkDir) throws IOException {
+    FileUtils.deleteDirectory(forkWorkDir);
+    forkWorkDir.mkdirs();
+
+    for (String dir : FORK_WORK_DIRS) {
+      File source = new File(targetDir, dir);
+
+      if (source.isDirectory())
+        FileUtils.copyDirectory(source, new File(forkWorkDir, dir));
+    }
+  }
+
+  /**
+   * Waits for a process started by {@link #forkGrails(String, String, String, File)} to finish.
+   *
+   * @return the exit value of the forked Grails, zero if the target succeeded.
+   */
+  protected int waitForFork(String name, Process fork) throws MojoExecutionException {
+    int exitValue;
+
+    try {
+      exitValue = fork.waitFor();
+    } catch (InterruptedException e) {
+      fork.destroy();
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while waiting for forked Grails " + name, e);
+    }
+
+    File usageFile = getForkClasspathUsageFile(name);
+    if (recordClasspathUsage && usageFile.isFile()) {
+      try {
+        writeClasspathUsageReport(name, ForkedGrailsLauncher.readFiles(usageFile));
+      } catch (IOException e) {
+        throw new MojoExecutionException("Unable to read " + usageFile, e);
+      }
+    }
+
+    return exitValue;
+  }
+
+  private File getForkClasspathUsageFile(String name) {
+    return new File(new File(project.getBuild().getDirectory(), "grails-fork"), name + "-classpath-usage.txt");
+  }
+
+  private void writeClasspathUsageReport(String name, List<File> usedFiles) throws MojoExecutionException {
+    ClasspathUsageReport report = new ClasspathUsageReport(resolvedArtifacts, usedFiles);
+    File reportFile = new File(project.getBuild().getDirectory(), "grails-classpath-usage/" + name + ".txt");
+
+    try {
+      report.write(reportFile, name, suggestExclusions);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to write " + reportFile, e);
+    }
+
+    getLog().info(report.getUnusedCount() + " of " + report.getArtifactCount() + " artifacts were not used by " + name + ", see " + reportFile);
+  }
+
+  private File codeSourceOf(Class<?> clazz) throws MojoExecutionException {
+    try {
+      return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (Exception e) {
+      throw new MojoExecutionException("Unable to locate the jar containing " + clazz.getName(), e);
+    }
+  }
+
+  private String urlsToPath(List<URL> urls) throws URISyntaxException {
+    List<File> files = new ArrayList<File>();
+    for (URL url : urls) {
+      files.add(new File(url.toURI()));
+    }
+    return filesToPath(files);
+  }
+
+  private String filesToPath(List<File> files) {
+    StringBuilder sb = new StringBuilder();
+    for (File file : files) {
+      if (sb.length() > 0)
+        sb.append(File.pathSeparator);
+      sb.append(file.getAbsolutePath());
+    }
+    return sb.toString();
+  }
+
   /**
    * Gets around an issue where a binary plugin's resource refers to a source plugins's resource and the binary plugin is subsequently
    * requested in a binary or source artifact.
@@ -650,10 +1625,10 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
 
     Object apGrailsVersion = metadata.get(APP_GRAILS_VERSION);
 
-    Artifact grailsDependency = findGrailsDependency(project);
-    if (grailsDependency != null) {
-      if (!grailsDependency.getVersion().equals(apGrailsVersion)) {
-        metadata.put(APP_GRAILS_VERSION, grailsDependency.getVersion());
+    String grailsDependencyVersion = findGrailsDependencyVersion(project);
+    if (grailsDependencyVersion != null) {
+      if (!grailsDependencyVersion.equals(apGrailsVersion)) {
+        metadata.put(APP_GRAILS_VERSION, grailsDependencyVersion);
         changed = true;
       }
     } else if (grailsVersion != null && !grailsVersion.equals(apGrailsVersion)) {
@@ -669,12 +1644,23 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
     return changed;
   }
 
-  private Artifact findGrailsDependency(MavenProject project) {
+  private String findGrailsDependencyVersion(MavenProject project) {
     Set dependencyArtifacts = project.getDependencyArtifacts();
+
+    // not there for goals that do not need dependency resolution, the declared version is the same
+    if (dependencyArtifacts == null) {
+      for (Dependency dependency : project.getDependencies()) {
+        if (dependency.getArtifactId().equals("grails-dependencies")) {
+          return dependency.getVersion();
+        }
+      }
+      return null;
+    }
+
     for (Object o : dependencyArtifacts) {
       Artifact artifact = (Artifact) o;
       if (artifact.getArtifactId().equals("grails-dependencies")) {
-        return artifact;
+        return artifact.getVersion();
       }
     }
     return null;
@@ -739,8 +1725,50 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
     }
   }
 
+  /**
+   * Resolves the project's dependencies, or takes them over from the resolution {@link GrailsResolutionWarmer}
+   * started when the build began.
+   */
+  private Set<Artifact> resolveProjectDependencies() throws MojoExecutionException {
+    GrailsDependencyResolver dependencyResolver = newDependencyResolver();
+    Future<Set<Artifact>> warmed = GrailsDependencyResolver.takeWarmedResolution(dependencyResolver.getWarmUpKey(project));
+
+    if (warmed != null) {
+      try {
+        if (!warmed.isDone())
+          getLog().info("Waiting for the dependencies being resolved in the background");
+
+        return warmed.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("Interrupted while waiting for the dependencies", e);
+      } catch (ExecutionException e) {
+        getLog().warn("Resolving the dependencies in the background failed, resolving them again: " + e.getCause());
+      } catch (CancellationException e) {
+        getLog().debug("The background resolution was cancelled");
+      }
+    }
+
+    return dependencyResolver.resolve(project);
+  }
+
+  private GrailsDependencyResolver newDependencyResolver() {
+    GrailsDependencyResolver dependencyResolver = new GrailsDependencyResolver(artifactResolver, artifactFactory, artifactMetadataSource,
+      artifactCollector, dependencyTreeBuilder, localRepository, remoteRepositories, getLog());
+
+    dependencyResolver.setRepositorySystem(repositorySystem, repositorySystemSession, remoteProjectRepositories);
+    dependencyResolver.setSessionCache(getSessionCache());
+    dependencyResolver.setUseTransitives(useTransitives);
+    dependencyResolver.setPreferLocalRepository(preferLocalRepository);
+    dependencyResolver.setThreads(resolverThreads);
+    dependencyResolver.setResolver(resolver);
+
+    return dependencyResolver;
+  }
+
   private Set<Artifact> collectAllProjectArtifacts() throws MojoExecutionException {
-    final Set<Artifact> resolvedArtifacts = new HashSet<Artifact>();
+    // linked all the way through: the classpath follows the dependency tree, not hash codes
+    final Set<Artifact> resolvedArtifacts = new LinkedHashSet<Artifact>();
 
     /*
     * Get the Grails dependencies from the plugin's POM file first.
@@ -758,8 +1786,8 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
     * that we get the benefit of Maven's conflict resolution.
     */
 
-    Set<Artifact> uncheckedArtifacts = useTransitives ? resolveFromTree() : getResolvedArtifactsFromUnresolvedDependencies(project.getDependencies(), false);
-    Map<String, Artifact> checklist = new HashMap<String, Artifact>();
+    Set<Artifact> uncheckedArtifacts = resolveProjectDependencies();
+    Map<String, Artifact> checklist = new LinkedHashMap<String, Artifact>();
 
     for( Artifact artifact : uncheckedArtifacts ) {
 //      resolvedArtifacts.add(artifact);
@@ -786,47 +1814,6 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
     return resolvedArtifacts;
   }
 
-  private Set<Artifact> resolveFromTree() {
-    final Set<Artifact> resolvedArtifacts = new HashSet<Artifact>();
-
-    try {
-      // we have to do this because Aether does not work.
-      dependencyTreeBuilder.buildDependencyTree(project, localRepository, artifactFactory,
-        artifactMetadataSource, artifactCollector).getRootNode().accept(new DependencyNodeVisitor() {
-        @Override
-        public boolean visit(DependencyNode dependencyNode) {
-          Artifact artifact = dependencyNode.getArtifact();
-
-          if (dependencyNode.getState() != DependencyNode.INCLUDED)
-            return true;
-
-          if (artifact.getArtifactId().equals(project.getArtifactId()) && artifact.getGroupId().equals(project.getGroupId()))
-            return true;
-
-          try {
-            artifactResolver.resolve(artifact, remoteRepositories, localRepository);
-          } catch (ArtifactResolutionException e) {
-            throw new RuntimeException(e);
-          } catch (ArtifactNotFoundException e) {
-            throw new RuntimeException(e);
-          }
-
-          resolvedArtifacts.add(artifact);
-          return true;
-        }
-
-        @Override
-        public boolean endVisit(DependencyNode dependencyNode) {
-          return true;
-        }
-      });
-    } catch (DependencyTreeBuilderException e) {
-      throw new RuntimeException(e);
-    }
-
-    return resolvedArtifacts;
-  }
-
   private List<Dependency> replaceVersion(List<Dependency> dependencies) {
     if (grailsVersion != null) {
       for(Dependency d : dependencies) {
@@ -840,36 +1827,45 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
   }
 
 
+  /**
+   * Converts the artifacts to classpath entries in a stable order: the patch artifacts first, in the order
+   * run.patchArtifacts lists them, then the others in the order they were resolved, which is dependency tree order.
+   */
   private List<URL> generateExecutionClasspath(Set<Artifact> resolvedArtifacts, String... excludeGroups) throws MojoExecutionException {
-    /*
-    * Convert each resolved artifact into a URL/classpath element.
-    */
-    final ArrayList<URL> classpath = new ArrayList<URL>();
-
     final List<String> excludes = Arrays.asList(excludeGroups);
+    final Map<String, List<URL>> patches = new LinkedHashMap<String, List<URL>>();
+    final Set<URL> others = new LinkedHashSet<URL>();
 
-    try {
+    for (String artifactId : artifactIdsToInsertAtStartOfClasspath) {
+      patches.put(artifactId, new ArrayList<URL>());
+    }
 
+    try {
       for (Artifact resolvedArtifact : resolvedArtifacts) {
         if ( excludes.contains(resolvedArtifact.getGroupId())) continue;
         final File file = resolvedArtifact.getFile();
-//        System.out.println("artifact " + resolvedArtifact.toString());
         if (file != null) {
-	        if (artifactIdsToInsertAtStartOfClasspath.contains(resolvedArtifact.getArtifactId())) {
+          List<URL> patch = patches.get(resolvedArtifact.getArtifactId());
+	        if (patch != null) {
             getLog().info("adding at the start" + file.getAbsolutePath());
 		        // a patch? grails is full of them, insert it at the start
-		        classpath.add(0, file.toURI().toURL());
+		        patch.add(file.toURI().toURL());
 	        } else { // insert it at the end
-		        classpath.add(file.toURI().toURL());
+		        others.add(file.toURI().toURL());
 	        }
-
         }
       }
     } catch (MalformedURLException murle) {
       throw new MojoExecutionException("Unable to find files", murle);
     }
 
-    return classpath;
+    final Set<URL> classpath = new LinkedHashSet<URL>();
+    for (List<URL> patch : patches.values()) {
+      classpath.addAll(patch);
+    }
+    classpath.addAll(others);
+
+    return new ArrayList<URL>(classpath);
   }
 
   /**
@@ -935,7 +1931,21 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
     Artifact pluginArtifact = findArtifact(this.project.getPluginArtifacts(), "com.bluetrainsoftware.bluegrails", "grails-maven-plugin");
     if (pluginArtifact == null)
       pluginArtifact = findArtifact(this.project.getPluginArtifacts(), "org.grails", "grails-dependencies");
-    return this.projectBuilder.buildFromRepository(pluginArtifact, this.remoteRepositories, this.localRepository);
+
+    SessionCache cache = getSessionCache();
+    MavenProject pluginProject = cache.getProject(pluginArtifact.getId());
+
+    if (pluginProject == null) {
+      pluginProject = this.projectBuilder.buildFromRepository(pluginArtifact, this.remoteRepositories, this.localRepository);
+      cache.putProject(pluginArtifact.getId(), pluginProject);
+    }
+
+    return pluginProject;
+  }
+
+  private SessionCache getSessionCache() {
+    // without a session, e.g. in tests, the cache lasts as long as the plugin is loaded
+    return SessionCache.forSession(session == null ? AbstractGrailsMojo.class : session.getRequest(), sessionCacheSize);
   }
 
 
@@ -961,49 +1971,7 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
 
 
   Set<Artifact> getResolvedArtifactsFromUnresolvedDependencies(List<Dependency> unresolvedDependencies, boolean resolveTransitively) throws MojoExecutionException {
-    final Set<Artifact> resolvedArtifacts = new HashSet<Artifact>();
-//    Artifact mojoArtifact = this.artifactFactory.createBuildArtifact(project.getGroupId(), project.getArtifactId(), project.getVersion(), "pom");
-
-    /*
-    * Resolve each artifact.  This will get all transitive artifacts AND eliminate conflicts.
-    */
-    final Set<Artifact> unresolvedArtifacts;
-
-//    for (Dependency d : unresolvedDependencies)
-//      System.out.println("dependency: " + d.toString());
-
-    try {
-      unresolvedArtifacts = MavenMetadataSource.createArtifacts(this.artifactFactory, unresolvedDependencies, null, null, null);
-//      for (Artifact artifact : unresolvedArtifacts) {
-//        System.out.println("unresolved " + artifact.toString());
-//      }
-
-
-
-      if (resolveTransitively) {
-        ArtifactResolutionResult artifacts = artifactResolver.resolveTransitively(unresolvedArtifacts, project.getArtifact(),
-            remoteRepositories, localRepository, artifactMetadataSource);
-        resolvedArtifacts.addAll(artifacts.getArtifacts());
-      } else {
-        // resolve each artifact individually
-        for( Artifact artifact : unresolvedArtifacts ) {
-          artifactResolver.resolve(artifact, remoteRepositories, localRepository);
-
-          resolvedArtifacts.add(artifact);
-        }
-      }
-
-
-
-    } catch (Exception e) {
-      throw new MojoExecutionException("Unable to complete configuring the build settings", e);
-    }
-
-    for (Artifact artifact : resolvedArtifacts) {
-      System.out.println("matched " + artifact.toString());
-    }
-
-    return resolvedArtifacts;
+    return newDependencyResolver().resolveDependencies(project, unresolvedDependencies, resolveTransitively);
   }
 
   private boolean logDependencies = false;
@@ -1071,7 +2039,7 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
   }
 
   private Set<Artifact> filterArtifacts(Set<Artifact> resolvedArtifacts, String... scopes) {
-    HashSet<Artifact> artifacts = new HashSet<Artifact>();
+    Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
     List<String> checkScopes = Arrays.asList(scopes);
 
     for(Artifact artifact : resolvedArtifacts) {
@@ -1084,13 +2052,7 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
 
 
   private String getPluginName(Artifact plugin) {
-    String pluginName = plugin.getArtifactId();
-
-    if (pluginName.startsWith(PLUGIN_PREFIX)) {
-      return pluginName.substring(PLUGIN_PREFIX.length());
-    } else {
-      return pluginName;
-    }
+    return PluginArchives.getPluginName(plugin);
   }
 
   private File getPluginTargetDirOverride(Artifact plugin) {
@@ -1109,7 +2071,7 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
   }
 
   private File getPluginTargetDirCentral(Artifact plugin) {
-      return new File(this.centralPluginInstallDir, getPluginName(plugin) + "-" + plugin.getVersion());
+      return PluginArchives.getCentralDirectory(this.centralPluginInstallDir, plugin);
   }
 
   private File getPluginTargetDir(Artifact plugin) {
@@ -1135,50 +2097,34 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
     final String pluginVersion = plugin.getVersion();
     boolean snapshot = pluginVersion.endsWith("-SNAPSHOT");
 
-    if (snapshot && plugin.getFile().getAbsolutePath().endsWith("target" + File.separator + "classes")) { // multi module build
+    // the background resolution may be extracting the same plugin
+    synchronized (PluginArchives.lockFor(targetDir)) {
+      if (snapshot && plugin.getFile().getAbsolutePath().endsWith("target" + File.separator + "classes")) { // multi module build
 
-      targetDir = plugin.getFile().getParentFile().getParentFile();
-      getLog().info(String.format("Plugin %s:%s is coming from a multi-module dependency (%s)", pluginName, pluginVersion, targetDir.getAbsolutePath()));
+        targetDir = plugin.getFile().getParentFile().getParentFile();
+        getLog().info(String.format("Plugin %s:%s is coming from a multi-module dependency (%s)", pluginName, pluginVersion, targetDir.getAbsolutePath()));
 
-    } else if ( (!snapshot && !targetDir.exists()) || (snapshot && !targetDirOverridden)) {
-      // Unpack the plugin if it hasn't already been or if its a SNAPSHOT and not overridden by -Dflag
+      } else if ( (!snapshot && !targetDir.exists()) || (snapshot && !targetDirOverridden)) {
+        // Unpack the plugin if it hasn't already been or if its a SNAPSHOT and not overridden by -Dflag
 
-      // Ideally we need to now do two things (a) see if we are running JDK7
-      // and (b) determine if -Dplugin.groupId.artifactId has been set - if this is so, we want to do a Files.createLink
-      // to the directory specified by  the -D flag. We should probably also check if the targetDir is a link and
-      // the -Dflag hasn't been set, in which case we'd want to remove the link and install the plugin (and let the user
-      // know this has happened.
-      // We wouldn't actually want this to be allowed when doing a release however.... So people should make sure they don't
-      // specify them, they they'll be installed.
+        // Ideally we need to now do two things (a) see if we are running JDK7
+        // and (b) determine if -Dplugin.groupId.artifactId has been set - if this is so, we want to do a Files.createLink
+        // to the directory specified by  the -D flag. We should probably also check if the targetDir is a link and
+        // the -Dflag hasn't been set, in which case we'd want to remove the link and install the plugin (and let the user
+        // know this has happened.
+        // We wouldn't actually want this to be allowed when doing a release however.... So people should make sure they don't
+        // specify them, they they'll be installed.
 
-      getLog().info(String.format("Installing Plugin %s:%s into (%s)", pluginName, pluginVersion, targetDir.getAbsolutePath()));
-      targetDir.mkdirs();
+        getLog().info(String.format("Installing Plugin %s:%s into (%s)", pluginName, pluginVersion, targetDir.getAbsolutePath()));
 
-      final ZipUnArchiver unzipper = new ZipUnArchiver();
-      unzipper.enableLogging(new ConsoleLogger(Logger.LEVEL_ERROR, "zip-unarchiver"));
-      unzipper.setSourceFile(plugin.getFile());
-      unzipper.setDestDirectory(targetDir);
-      unzipper.setOverwrite(true);
-      try {
-        unzipper.extract();
-      } catch (ArchiverException e) {
-        throw new MojoExecutionException("Unable to extract zip", e);
+        try {
+          PluginArchives.extract(plugin, targetDir);
+        } catch (IOException e) {
+          throw new MojoExecutionException("Unable to install plugin " + pluginName + ":" + pluginVersion, e);
+        }
+      } else {
+        getLog().info(String.format("Plugin %s:%s already installed (%s)", pluginName, pluginVersion, targetDir.getAbsolutePath()));
       }
-	    try {
-		    File inputPom = new File(plugin.getFile().getParentFile(), pluginName + "-" + pluginVersion + ".pom");
-		    File outputPom = new File(targetDir, "pom.xml");
-		    getLog().info(String.format("copying %s to %s", inputPom.getAbsolutePath(), outputPom.getAbsolutePath()));
-		    FileReader fr = new FileReader(inputPom);
-		    FileWriter fw = new FileWriter(outputPom);
-		    IOUtils.copy(fr, fw);
-		    fw.flush();
-		    fw.close();
-		    fr.close();
-	    } catch (IOException e) {
-		    throw new MojoExecutionException("Unable to copy pom.xml file");
-	    }
-    } else {
-      getLog().info(String.format("Plugin %s:%s already installed (%s)", pluginName, pluginVersion, targetDir.getAbsolutePath()));
     }
 
     return targetDir;
@@ -1305,12 +2251,12 @@ public abstract class AbstractGrailsMojo extends AbstractMojo {
    * @return list of plugins
    */
   private Set<Artifact> removePluginArtifacts(final Set<Artifact> artifact) {
-    final Set<Artifact> pluginArtifacts = new HashSet<Artifact>();
+    final Set<Artifact> pluginArtifacts = new LinkedHashSet<Artifact>();
 
     if (artifact != null) {
       for (final Iterator<Artifact> iter = artifact.iterator(); iter.hasNext(); ) {
         final Artifact dep = iter.next();
-        if (dep.getType() != null && (dep.getType().equals("grails-plugin") || dep.getType().equals("zip") || (dep.getType().equals("grails-plugin2") && "plugin".equals(dep.getClassifier())) )) {
+        if (PluginArchives.isPlugin(dep)) {
           pluginArtifacts.add(dep);
 //          System.out.println("removing " + dep.toString());
           iter.remove();
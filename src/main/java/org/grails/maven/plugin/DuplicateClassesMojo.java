@@ -0,0 +1,57 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.grails.maven.plugin.tools.DuplicateClassScanner;
+
+import java.util.Map;
+
+/**
+ * Lists the classes that are in more than one jar of the Grails classpath, which jar wins and whether the copies
+ * differ, in target/grails-duplicate-classes.txt.
+ *
+ * @version $Id$
+ * @description Reports duplicate classes on the Grails classpath.
+ * @since 4.2
+ */
+@Mojo(name = "duplicate-classes", requiresProject = true, requiresDependencyResolution = ResolutionScope.TEST)
+public class DuplicateClassesMojo extends AbstractGrailsMojo {
+
+  /**
+   * Fail the build if there are duplicate classes whose copies differ.
+   */
+  @Parameter(property = "grails.duplicateClasses.fail", defaultValue = "false")
+  private boolean failOnConflicts;
+
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    Map<String, DuplicateClassScanner.Duplicate> duplicates = findDuplicateClasses();
+
+    if (duplicates.isEmpty()) {
+      getLog().info("No duplicate classes on the Grails classpath");
+      return;
+    }
+
+    int conflicts = reportDuplicateClasses(duplicates);
+
+    if (failOnConflicts && conflicts > 0)
+      throw new MojoFailureException(conflicts + " classes on the Grails classpath are in more than one jar with different content");
+  }
+}
@@ -7,10 +7,17 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.*;
 import org.apache.maven.project.MavenProjectHelper;
+import org.grails.maven.plugin.tools.SourcePluginPackager;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Packages the binary Grails plugin.
@@ -42,17 +49,58 @@ public class GrailsPackageBinaryPluginMojo extends AbstractGrailsMojo {
   @Parameter(property = "component.org.apache.maven.artifact.handler.ArtifactHandler#grails-plugin2")
   protected ArtifactHandler artifactHandler;
 
+  /**
+   * Zip up the source distribution in the plugin, while Grails builds the binary, rather than running the Grails
+   * PackagePlugin script a second time. The plugin.xml lists the pom's repositories and compile and runtime
+   * dependencies rather than those of BuildConfig.groovy, and the plugin is not compiled for it.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "grails.packagePlugin.native", defaultValue = "false")
+  private boolean nativePackaging;
+
   public void execute() throws MojoExecutionException, MojoFailureException {
     syncAppVersion();
 
     projectHelper.addResource(project, project.getBasedir().getAbsolutePath(), Arrays.asList("application.properties", getGrailsPluginFileName()), Collections.emptyList());
 
-    // First package the plugin using the Grails script.
-    runGrails("PackagePlugin", "--binary");
-    renameJarToMavenExpectations();
+    if (!nativePackaging) {
+      // First package the plugin using the Grails script.
+      runGrails("PackagePlugin", "--binary");
+      renameJarToMavenExpectations();
+
+      runGrails("PackagePlugin"); // no binary, do a source distribution
+      File zipFile = GrailsPackagePluginMojo.renameToSourcePackage(project, getBasedir(), getLog(), null, null);
+
+      projectHelper.attachArtifact( project, "zip", "plugin", zipFile );
+      return;
+    }
+
+    // The source distribution is a filtered copy of the project tree, zip it up while Grails builds the binary
+    final File zipFile = GrailsPackagePluginMojo.getSourcePackageFile(project);
+    final SourcePluginPackager packager = GrailsPackagePluginMojo.newSourcePluginPackager(project, getBasedir(),
+      getGrailsServices().readGrailsPluginProject());
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Future<Integer> sourcePackage = executor.submit(new Callable<Integer>() {
+      public Integer call() throws IOException {
+        return packager.write(zipFile);
+      }
+    });
+
+    try {
+      runGrails("PackagePlugin", "--binary");
+      renameJarToMavenExpectations();
 
-    runGrails("PackagePlugin"); // no binary, do a source distribution
-    File zipFile = GrailsPackagePluginMojo.renameToSourcePackage(project, getBasedir(), getLog(), null, null);
+      getLog().info("Wrote " + sourcePackage.get() + " entries to plugin ZIP '" + zipFile + "'.");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while writing the plugin ZIP", e);
+    } catch (ExecutionException e) {
+      throw new MojoExecutionException("Unable to write the plugin ZIP " + zipFile, e.getCause());
+    } finally {
+      executor.shutdown();
+    }
 
     projectHelper.attachArtifact( project, "zip", "plugin", zipFile );
   }
@@ -17,15 +17,22 @@ package org.grails.maven.plugin;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.*;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
+import org.grails.maven.plugin.tools.GrailsPluginProject;
+import org.grails.maven.plugin.tools.PluginArchives;
+import org.grails.maven.plugin.tools.SourcePluginPackager;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * Packages the Grails plugin.
@@ -57,11 +64,41 @@ public class GrailsPackagePluginMojo extends AbstractGrailsMojo {
   @Component
   private MavenProjectHelper projectHelper;
 
+  /**
+   * The dependency scopes a plugin passes on to the projects installing it.
+   */
+  private static final List<String> EXPORTED_SCOPES = Arrays.asList("compile", "runtime");
+
+  /**
+   * Zip up the plugin sources in the plugin rather than running the Grails PackagePlugin script, which saves
+   * starting Grails. The plugin.xml lists the pom's repositories and compile and runtime dependencies rather than
+   * those of BuildConfig.groovy, and the plugin is not compiled first.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "grails.packagePlugin.native", defaultValue = "false")
+  private boolean nativePackaging;
+
   public void execute() throws MojoExecutionException, MojoFailureException {
     syncAppVersion();
 
     projectHelper.addResource(project, project.getBasedir().getAbsolutePath(), Arrays.asList("application.properties", getGrailsPluginFileName()), Collections.emptyList());
 
+    if (nativePackaging) {
+      File zipFile = getSourcePackageFile(project);
+
+      try {
+        int entries = newSourcePluginPackager(project, getBasedir(), getGrailsServices().readGrailsPluginProject()).write(zipFile);
+        getLog().info("Wrote " + entries + " entries to plugin ZIP '" + zipFile + "'.");
+      } catch (IOException e) {
+        throw new MojoExecutionException("Unable to write the plugin ZIP " + zipFile, e);
+      }
+
+      artifact.setFile(zipFile);
+      artifact.setArtifactHandler(artifactHandler);
+      return;
+    }
+
     // First package the plugin using the Grails script.
     runGrails("PackagePlugin");
 //    runGrails("PackagePlugin", "--binary");
@@ -71,15 +108,49 @@ public class GrailsPackagePluginMojo extends AbstractGrailsMojo {
     renameToSourcePackage(project, getBasedir(), getLog(), artifact, artifactHandler);
   }
 
-  public static File renameToSourcePackage(MavenProject project, File baseDir, org.apache.maven.plugin.logging.Log log,
-                                           Artifact artifact, ArtifactHandler artifactHandler)
-    throws MojoExecutionException {
+  /**
+   * @return where the source plugin zip goes, target/grails-&lt;artifactId&gt;-&lt;version&gt;.zip.
+   */
+  public static File getSourcePackageFile(MavenProject project) {
     String zipFileName = project.getArtifactId() + "-" + project.getVersion() + ".zip";
     if (!zipFileName.startsWith(PLUGIN_PREFIX)) zipFileName = PLUGIN_PREFIX + zipFileName;
 
-    File zipGeneratedByGrails = new File(baseDir, zipFileName);
+    return new File(project.getBuild().getDirectory(), zipFileName);
+  }
+
+  /**
+   * @return a packager for the source plugin zip, with the pom's repositories and the dependencies it passes on.
+   */
+  public static SourcePluginPackager newSourcePluginPackager(MavenProject project, File basedir, GrailsPluginProject plugin) {
+    SourcePluginPackager packager = new SourcePluginPackager(basedir, plugin);
+
+    for (ArtifactRepository repository : project.getRemoteArtifactRepositories()) {
+      packager.addRepository(repository.getId(), repository.getUrl());
+    }
+
+    for (Dependency dependency : project.getDependencies()) {
+      String scope = dependency.getScope() == null ? "compile" : dependency.getScope();
+
+      if (!EXPORTED_SCOPES.contains(scope)) continue;
+
+      if (PluginArchives.isPlugin(dependency.getType(), dependency.getClassifier())) {
+        String pluginName = dependency.getArtifactId().startsWith(PLUGIN_PREFIX) ?
+          dependency.getArtifactId().substring(PLUGIN_PREFIX.length()) : dependency.getArtifactId();
+        packager.addPlugin(scope, dependency.getGroupId(), pluginName, dependency.getVersion());
+      } else {
+        packager.addDependency(scope, dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion());
+      }
+    }
+
+    return packager;
+  }
+
+  public static File renameToSourcePackage(MavenProject project, File baseDir, org.apache.maven.plugin.logging.Log log,
+                                           Artifact artifact, ArtifactHandler artifactHandler)
+    throws MojoExecutionException {
+    File mavenZipFile = getSourcePackageFile(project);
+    File zipGeneratedByGrails = new File(baseDir, mavenZipFile.getName());
 
-    File mavenZipFile = new File(project.getBuild().getDirectory(), zipFileName);
     mavenZipFile.delete();
     if (!zipGeneratedByGrails.renameTo(mavenZipFile)) {
       throw new MojoExecutionException("Unable to rename the plugin ZIP to the target directory (" + zipGeneratedByGrails.getAbsolutePath() + " to " + mavenZipFile.getAbsolutePath() + ") - perhaps the application.properties version is out of sync?");
@@ -32,9 +32,12 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 public class GrailsTestAppMojo extends AbstractGrailsMojo {
 
   public void execute() throws MojoExecutionException, MojoFailureException {
+    if (isEmptyShard(null))
+      return;
+
     try {
       env = "test";
-      runGrails("TestApp");
+      runGrails("TestApp", testAppArgs(null));
     } finally {
       env = null;
     }
@@ -47,7 +47,7 @@ public class GrailsWarMojo extends AbstractGrailsMojo {
 
     try {
       env = "prod";
-      runGrails("War");
+      runGrailsWar(null);
     } finally {
       env = null;
     }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2007 the original author or authors.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.grails.maven.plugin.tools.JUnitReports;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the JUnit XML reports of several test runs, typically the shards of a test run spread over CI nodes
+ * (grails.test.shardIndex/grails.test.shardCount), into a single TESTS-TestSuites.xml.
+ *
+ * @version $Id$
+ * @description Merges the JUnit XML reports of sharded test runs into one report.
+ * @since 4.2
+ */
+@Mojo(name = "merge-test-reports", requiresProject = true)
+public class MergeTestReportsMojo extends AbstractMojo {
+
+  /**
+   * The directories holding the reports of each node, they are searched recursively for TEST-*.xml.
+   */
+  @Parameter(property = "grails.test.reportDirectories", defaultValue = "${project.build.directory}/test-reports")
+  protected List<File> reportDirectories;
+
+  /**
+   * The merged report.
+   */
+  @Parameter(property = "grails.test.mergedReport", defaultValue = "${project.build.directory}/test-reports/" + JUnitReports.MERGED_REPORT_NAME)
+  protected File mergedReport;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    List<File> reports = new ArrayList<File>();
+
+    for (File reportDirectory : reportDirectories) {
+      reports.addAll(JUnitReports.findReports(reportDirectory));
+    }
+
+    if (reports.isEmpty()) {
+      getLog().info("No test reports found in " + reportDirectories);
+      return;
+    }
+
+    try {
+      int suites = JUnitReports.merge(reports, mergedReport);
+
+      getLog().info("Merged " + suites + " test suites into " + mergedReport);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to merge test reports", e);
+    }
+  }
+}
@@ -19,7 +19,11 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
-import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.grails.maven.plugin.tools.CleanTargets;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * Cleans a Grails project and jars in lib directory.
@@ -29,15 +33,57 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
  * @description Cleans a Grails project and jars in lib directory.
  * @since 0.1
  */
-@Mojo(name = "maven-clean", requiresProject = true, requiresDependencyResolution = ResolutionScope.COMPILE, defaultPhase = LifecyclePhase.CLEAN)
+@Mojo(name = "maven-clean", requiresProject = true, defaultPhase = LifecyclePhase.CLEAN)
 public class MvnCleanMojo extends AbstractGrailsMojo {
 
+  /**
+   * Delete what Grails would clean without starting Grails, taking the directories and plugins from the last
+   * Grails run. Grails still runs the clean when there is no record of a run, or when the project or one of its
+   * plugins has a clean event handler or a Clean script of its own.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "grails.clean.native", defaultValue = "true")
+  private boolean nativeClean;
+
   /**
    * Executes the MvnWarMojo on the current project.
    *
    * @throws MojoExecutionException if an error occured while building the webapp
    */
   public void execute() throws MojoExecutionException, MojoFailureException {
+    if (nativeClean && cleanNatively())
+      return;
+
     runGrails("Clean");
   }
+
+  /**
+   * @return false if Grails has to run the clean after all.
+   */
+  private boolean cleanNatively() throws MojoExecutionException {
+    try {
+      CleanTargets targets = getCleanTargets();
+
+      if (targets == null) {
+        getLog().info("Running the Grails clean, there is no record of an earlier Grails run to tell which plugins could hook into it.");
+        return false;
+      }
+
+      File hook = targets.findCleanHook(getBasedir());
+
+      if (hook != null) {
+        getLog().info("Running the Grails clean, " + hook + " hooks into it.");
+        return false;
+      }
+
+      long start = System.currentTimeMillis();
+      int deleted = targets.delete(Runtime.getRuntime().availableProcessors());
+      getLog().info("Cleaned " + deleted + " directories and files in " + (System.currentTimeMillis() - start) + "ms.");
+
+      return true;
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to clean", e);
+    }
+  }
 }
@@ -15,11 +15,30 @@
  */
 package org.grails.maven.plugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.grails.maven.plugin.tools.AbiFingerprints;
+import org.grails.maven.plugin.tools.BuildCache;
+import org.grails.maven.plugin.tools.CompileState;
+import org.grails.maven.plugin.tools.Fingerprints;
 
 /**
  * Compiles a Grails project.
@@ -32,6 +51,62 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 @Mojo(name = "maven-compile", requiresProject = true, requiresDependencyResolution = ResolutionScope.TEST, defaultPhase = LifecyclePhase.COMPILE)
 public class MvnCompileMojo extends AbstractGrailsMojo {
 
+  /**
+   * The directories in a plugin directory that are not part of the plugin.
+   */
+  private static final Set<String> PLUGIN_BUILD_DIRS = Collections.singleton("target");
+
+  /**
+   * Keep track of which source each class came from and which classes use which, and before compiling delete only
+   * the class files of changed sources and of everything depending on them. Grails then recompiles just those
+   * and the rest of target/classes is kept.
+   *
+   * Compile dependencies are compared by the fingerprint of their ABI, so a new build of a dependency that only
+   * changed method bodies causes no recompilation at all, and one that did change its ABI only recompiles the
+   * classes using it. When neither the sources nor any ABI changed, Grails is not run at all. Adding or removing a
+   * dependency, any change to a plugin (but not to its build output) or a different Grails version still means a
+   * full rebuild.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "grails.compile.incremental", defaultValue = "false")
+  private boolean incremental;
+
+  /**
+   * Keep compiled classes in a build cache, keyed by the sources, the dependencies (compile dependencies by their
+   * ABI), the plugins, the Grails version and the environment. On a hit target/classes is restored from the cache
+   * and Grails is not run.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "grails.buildCache", defaultValue = "false")
+  private boolean buildCache;
+
+  /**
+   * The local build cache, shared by all projects on the machine.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "grails.buildCache.directory", defaultValue = "${user.home}/.grails/maven/build-cache")
+  private File buildCacheDirectory;
+
+  /**
+   * The base URL of a remote build cache, an HTTP server answering GET (and, to push, PUT) for &lt;url&gt;/&lt;key&gt;.zip.
+   * Entries found there are copied into the local cache.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "grails.buildCache.url")
+  private String buildCacheUrl;
+
+  /**
+   * Whether to upload newly compiled classes to the remote build cache, typically only from CI.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "grails.buildCache.push", defaultValue = "false")
+  private boolean buildCachePush;
+
   /**
    * Executes the MvnWarMojo on the current project.
    *
@@ -39,6 +114,261 @@ public class MvnCompileMojo extends AbstractGrailsMojo {
    *          if an error occured while building the webapp
    */
   public void execute() throws MojoExecutionException, MojoFailureException {
+    if (!incremental && !buildCache) {
+      runGrails("Compile");
+      return;
+    }
+
+    final File basedir = getBasedir();
+    final File compileDir = new File(project.getBuild().getDirectory(), "grails-compile");
+    final File classesDir = new File(project.getBuild().getDirectory(), "classes");
+
+    try {
+      List<File> sourceRoots = CompileState.sourceRoots(basedir);
+      Map<String, String> sourceHashes = CompileState.hashSources(basedir, sourceRoots);
+
+      Map<String, File> compileDependencies = compileDependencies();
+      Map<String, String> abiFingerprints = new TreeMap<String, String>();
+      AbiFingerprints abiCache = new AbiFingerprints(new File(compileDir, "abi"));
+      for (Map.Entry<String, File> dependency : compileDependencies.entrySet()) {
+        abiFingerprints.put(dependency.getKey(), abiCache.of(dependency.getValue()));
+      }
+      abiCache.save();
+
+      BuildCache cache = null;
+      String cacheKey = null;
+
+      if (buildCache) {
+        cache = new BuildCache(buildCacheDirectory, buildCacheUrl);
+        cacheKey = buildCacheKey(sourceHashes, abiFingerprints);
+
+        if (restoreFromCache(cache, cacheKey, classesDir)) {
+          if (incremental)
+            saveCompileState(sourceRoots, sourceHashes, compileDependencies, abiFingerprints, classesDir, new File(compileDir, "state"));
+          return;
+        }
+      }
+
+      if (incremental) {
+        compileIncrementally(sourceRoots, sourceHashes, compileDependencies, abiFingerprints, classesDir, new File(compileDir, "state"));
+      } else {
+        // what is stored under the key has to be what these sources compile to, not that on top of an older compile
+        FileUtils.deleteDirectory(classesDir);
+        runGrails("Compile");
+      }
+
+      if (cache != null)
+        storeInCache(cache, cacheKey, classesDir);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to work out what to compile", e);
+    }
+  }
+
+  private void compileIncrementally(List<File> sourceRoots, Map<String, String> sourceHashes, Map<String, File> compileDependencies,
+                                    Map<String, String> abiFingerprints, File classesDir, File stateFile) throws IOException, MojoExecutionException {
+    String fingerprint = classpathStructureFingerprint();
+    CompileState previous = CompileState.load(stateFile);
+
+    if (previous == null || !classesDir.isDirectory()) {
+      getLog().info("No previous compile state, compiling everything.");
+      FileUtils.deleteDirectory(classesDir);
+    } else if (!fingerprint.equals(previous.getClasspathFingerprint())) {
+      getLog().info("Dependencies or plugins have been added or removed since the last compile, compiling everything.");
+      FileUtils.deleteDirectory(classesDir);
+    } else {
+      Set<String> stale = previous.staleClasses(sourceHashes);
+      Set<String> changedAbiClasses = new HashSet<String>();
+
+      for (Map.Entry<String, String> abi : abiFingerprints.entrySet()) {
+        if (!abi.getValue().equals(previous.getAbiFingerprints().get(abi.getKey()))) {
+          getLog().info("The ABI of " + abi.getKey() + " has changed.");
+
+          // the classes the new version no longer has count as much as those it changed
+          changedAbiClasses.addAll(AbiFingerprints.classesIn(compileDependencies.get(abi.getKey())));
+          Set<String> previousClasses = previous.getDependencyClasses().get(abi.getKey());
+          if (previousClasses != null)
+            changedAbiClasses.addAll(previousClasses);
+        }
+      }
+
+      stale.addAll(previous.dependentClasses(changedAbiClasses));
+
+      if (stale.isEmpty() && sourceHashes.equals(previous.getSourceHashes())) {
+        getLog().info("Incremental compile: sources and dependency ABIs are unchanged, nothing to compile.");
+        return;
+      }
+
+      getLog().info("Incremental compile: " + stale.size() + " of " + previous.getClassSources().size() + " classes are out of date.");
+
+      for (String className : stale) {
+        File classFile = new File(classesDir, className.replace('/', File.separatorChar) + ".class");
+
+        if (classFile.exists() && !classFile.delete())
+          throw new MojoExecutionException("Unable to delete stale class " + classFile);
+      }
+    }
+
+    // the state is only valid for a successful compile, so it goes before and comes back after
+    stateFile.delete();
+
     runGrails("Compile");
+
+    saveCompileState(sourceRoots, sourceHashes, compileDependencies, abiFingerprints, classesDir, stateFile);
+  }
+
+  private void saveCompileState(List<File> sourceRoots, Map<String, String> sourceHashes, Map<String, File> compileDependencies,
+                                Map<String, String> abiFingerprints, File classesDir, File stateFile) throws IOException, MojoExecutionException {
+    CompileState state = CompileState.scan(getBasedir(), sourceRoots, sourceHashes, classesDir, classpathStructureFingerprint());
+    state.setAbiFingerprints(abiFingerprints);
+
+    Map<String, Set<String>> dependencyClasses = new TreeMap<String, Set<String>>();
+    for (Map.Entry<String, File> dependency : compileDependencies.entrySet()) {
+      dependencyClasses.put(dependency.getKey(), AbiFingerprints.classesIn(dependency.getValue()));
+    }
+    state.setDependencyClasses(dependencyClasses);
+    state.save(stateFile);
+  }
+
+  private boolean restoreFromCache(BuildCache cache, String cacheKey, File classesDir) throws IOException {
+    File entry = cache.getLocalEntry(cacheKey);
+
+    if (!entry.isFile()) {
+      try {
+        entry = cache.fetch(cacheKey);
+      } catch (IOException e) {
+        getLog().warn("Unable to read from the remote build cache: " + e.getMessage());
+        entry = null;
+      }
+    }
+
+    if (entry == null) {
+      getLog().info("Build cache miss for " + cacheKey);
+      return false;
+    }
+
+    getLog().info("Build cache hit for " + cacheKey + ", restoring " + classesDir + " instead of compiling.");
+    cache.restore(entry, classesDir);
+
+    return true;
+  }
+
+  private void storeInCache(BuildCache cache, String cacheKey, File classesDir) throws IOException {
+    if (cache.getLocalEntry(cacheKey).isFile() || !classesDir.isDirectory()) return;
+
+    File entry = cache.store(cacheKey, classesDir);
+
+    if (buildCachePush) {
+      try {
+        cache.push(cacheKey, entry);
+        getLog().info("Pushed " + cacheKey + " to the remote build cache.");
+      } catch (IOException e) {
+        getLog().warn("Unable to push to the remote build cache: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Identifies everything that goes into the compile. Nothing machine specific may go into it (paths, times), so that
+   * the key is the same in every workspace and on every machine.
+   */
+  private String buildCacheKey(Map<String, String> sourceHashes, Map<String, String> abiFingerprints) throws MojoExecutionException, IOException {
+    List<String> entries = new ArrayList<String>();
+
+    for (Artifact artifact : getResolvedArtifacts()) {
+      String key = dependencyKey(artifact);
+      String abi = "compile".equals(artifact.getScope()) ? abiFingerprints.get(key) : null;
+
+      // a compile dependency counts by its ABI alone, so a rebuilt snapshot with the same ABI still hits
+      entries.add(key + ":" + artifact.getScope() + ":" + (abi != null ? abi : artifact.getBaseVersion()));
+    }
+
+    for (Artifact plugin : getPluginArtifacts()) {
+      entries.add("plugin:" + dependencyKey(plugin) + ":" + plugin.getBaseVersion() +
+        (plugin.isSnapshot() && plugin.getFile() != null && plugin.getFile().isFile() ? ":" + Fingerprints.of(plugin.getFile()) : ""));
+    }
+
+    for (Map.Entry<String, String> source : sourceHashes.entrySet()) {
+      entries.add("source:" + source.getKey() + ":" + source.getValue());
+    }
+
+    Collections.sort(entries);
+
+    MessageDigest digest = Fingerprints.newDigest();
+    Fingerprints.update(digest, "grails:" + getGrailsVersion());
+    Fingerprints.update(digest, "env:" + (env == null ? "" : env));
+    for (String entry : entries) {
+      Fingerprints.update(digest, entry);
+    }
+
+    return Fingerprints.hex(digest.digest());
+  }
+
+  /**
+   * The compile scoped dependencies, by groupId:artifactId:type:classifier so that a new version of a
+   * dependency is compared with the old one.
+   */
+  private Map<String, File> compileDependencies() throws MojoExecutionException {
+    Map<String, File> dependencies = new TreeMap<String, File>();
+
+    for (Artifact artifact : getResolvedArtifacts()) {
+      if ("compile".equals(artifact.getScope()) && artifact.getFile() != null && artifact.getFile().exists())
+        dependencies.put(dependencyKey(artifact), artifact.getFile());
+    }
+
+    return dependencies;
+  }
+
+  /**
+   * Which dependencies (but not which versions of them) and plugins the project has and the Grails version.
+   * The versions of compile dependencies are covered by their ABI fingerprints, other dependencies do not
+   * affect what gets compiled.
+   */
+  private String classpathStructureFingerprint() throws MojoExecutionException {
+    List<String> entries = new ArrayList<String>();
+
+    for (Artifact artifact : getResolvedArtifacts()) {
+      entries.add(dependencyKey(artifact) + ":" + artifact.getScope());
+    }
+
+    for (File pluginDirectory : getPluginDirectories()) {
+      MessageDigest plugin = Fingerprints.newDigest();
+      addFiles(plugin, pluginDirectory, pluginDirectory.getAbsolutePath().length());
+
+      // snapshot plugins are unpacked into the same directory again, so it is their content that counts
+      entries.add("plugin:" + pluginDirectory.getAbsolutePath() + ":" + Fingerprints.hex(plugin.digest()));
+    }
+
+    Collections.sort(entries);
+
+    MessageDigest digest = Fingerprints.newDigest();
+    Fingerprints.update(digest, "grails:" + getGrailsVersion());
+    for (String entry : entries) {
+      Fingerprints.update(digest, entry);
+    }
+
+    return Fingerprints.hex(digest.digest());
+  }
+
+  private static void addFiles(MessageDigest digest, File dir, int prefix) {
+    File[] files = dir.listFiles();
+
+    if (files == null) return;
+
+    Arrays.sort(files);
+
+    for (File file : files) {
+      // a plugin in the reactor is its own basedir, and what its build or the IDE writes there is not the plugin
+      if (file.getName().startsWith(".") || (file.isDirectory() && PLUGIN_BUILD_DIRS.contains(file.getName())))
+        continue;
+
+      if (file.isDirectory())
+        addFiles(digest, file, prefix);
+      else
+        Fingerprints.update(digest, file.getAbsolutePath().substring(prefix) + "|" + file.length() + "|" + file.lastModified());
+    }
+  }
+
+  private static String dependencyKey(Artifact artifact) {
+    return artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getType() + ":" + artifact.getClassifier();
   }
 }
@@ -15,12 +15,25 @@
  */
 package org.grails.maven.plugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.grails.maven.plugin.tools.GrailsTestSources;
 
 /**
  * Runs a Grails application's functional tests.
@@ -69,17 +82,63 @@ public class MvnFunctionalTestMojo extends AbstractGrailsMojo {
   @Parameter(property = "maven.test.failure.ignore", defaultValue = "false")
   private boolean testFailureIgnore;
 
+  /**
+   * When greater than zero, the application is started once on a free port and the functional test classes are
+   * shared out between this many forked TestApp JVMs which all test against that one running application. The
+   * integration tests run in a fork of their own once the application has stopped, so that they do not share
+   * the test DataSource with it.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "run.functionalTestWorkers", defaultValue = "0")
+  private int functionalTestWorkers;
+
+  /**
+   * How long, in seconds, to wait for the shared application to start answering HTTP requests.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "run.functionalStartupTimeout", defaultValue = "300")
+  private int functionalStartupTimeout;
+
+  /**
+   * The context path the shared application is served under. Defaults to /app.name as Grails does.
+   *
+   * @since 4.2
+   */
+  @Parameter(property = "run.functionalContextPath")
+  private String functionalContextPath;
+
   public void execute() throws MojoExecutionException, MojoFailureException {
     if (skipTests || skip || (mavenSkip != null && mavenSkip.booleanValue())) {
       getLog().info("Functional tests are skipped.");
       return;
     }
 
+    if (runTestPhasesInParallel) {
+      getLog().info("Functional tests have already been run alongside the unit tests.");
+      return;
+    }
+
+    if (functionalTestWorkers > 0) {
+      // the workers are dealt whole classes, so -Dtest can only narrow down which classes they get
+      List<String> functionalTests = selectTestClasses("functional");
+
+      if (functionalTests.isEmpty()) {
+        getLog().info("No functional tests selected, not starting a shared application.");
+      } else {
+        runAgainstSharedApplication(functionalTests);
+        return;
+      }
+    }
+
     // even if there are no integration tests, we want to do so as it starts the grails container and makes sure it wires.
+    if (isEmptyShard("--integration --functional"))
+      return;
 
     try {
       env = "test";
-      runGrails("TestApp", "--integration --functional");
+      runGrails("TestApp", testAppArgs("--integration --functional"));
     } catch (MojoExecutionException me) {
       if (!testFailureIgnore) {
         throw me;
@@ -89,4 +148,239 @@ public class MvnFunctionalTestMojo extends AbstractGrailsMojo {
     }
 
   }
+
+  /**
+   * Starts the application once, then runs the functional test classes in parallel forked TestApp JVMs against it
+   * using -baseUrl so that none of them starts a container of its own. The application is compiled and packaged
+   * here first and every fork works on a copy of its own. The integration tests follow once the application has
+   * stopped.
+   */
+  private void runAgainstSharedApplication(List<String> functionalTests) throws MojoExecutionException {
+    final int workers = Math.min(functionalTestWorkers, functionalTests.size());
+    final File reportsDir = new File(project.getBuild().getDirectory(), "test-reports");
+    final int port = findFreePort();
+    final String baseUrl = "http://localhost:" + port + contextPath();
+
+    Map<String, String> serverProperties = new HashMap<String, String>();
+    serverProperties.put("server.port", String.valueOf(port));
+    serverProperties.put("grails.server.port.http", String.valueOf(port));
+
+    Map<String, Process> forks = new LinkedHashMap<String, Process>();
+    Process application = null;
+
+    try {
+      env = "test";
+      prepareForForks();
+
+      application = forkGrails("functional-app", "RunApp", null, null, serverProperties);
+      waitForApplication(application, baseUrl);
+
+      for (int worker = 0; worker < workers; worker++) {
+        StringBuilder args = new StringBuilder("--functional -baseUrl=" + baseUrl);
+
+        // deal the classes out in turn so the workers get a similar mix
+        for (int i = worker; i < functionalTests.size(); i += workers) {
+          args.append(' ').append(GrailsTestSources.toTargetPattern(functionalTests.get(i)));
+        }
+
+        String name = "functional-" + (worker + 1);
+        forks.put(name, forkGrails(name, "TestApp", args.toString(), new File(reportsDir, name)));
+      }
+
+      List<String> failures = new ArrayList<String>();
+
+      for (Map.Entry<String, Process> fork : forks.entrySet()) {
+        int result = waitForFork(fork.getKey(), fork.getValue());
+
+        if (result != 0)
+          failures.add(fork.getKey() + " returned " + result);
+      }
+
+      stopApplication(application, port);
+      application = null;
+
+      if (!isEmptyShard("--integration")) {
+        int result = waitForFork("integration", forkGrails("integration", "TestApp", testAppArgs("--integration"), new File(reportsDir, "integration")));
+
+        if (result != 0)
+          failures.add("integration returned " + result);
+      }
+
+      if (!failures.isEmpty()) {
+        String message = "Grails tests failed: " + failures + ". See the logs in " + new File(project.getBuild().getDirectory(), "grails-fork");
+
+        if (testFailureIgnore) {
+          getLog().error(message);
+        } else {
+          throw new MojoExecutionException(message);
+        }
+      }
+    } finally {
+      env = null;
+
+      for (Process fork : forks.values()) {
+        fork.destroy();
+      }
+
+      if (application != null)
+        stopApplication(application, port);
+    }
+  }
+
+  /**
+   * Stops the shared application and waits for it to be gone, so that whatever runs next has the test database to
+   * itself. When Grails forks RunApp itself the application runs in a JVM the fork started, which outlives the
+   * fork being destroyed, so it is asked to stop through Grails first.
+   */
+  private void stopApplication(Process application, int port) throws MojoExecutionException {
+    getLog().info("Stopping shared application on port " + port);
+
+    if (isForkedByGrails("RunApp"))
+      stopThroughGrails(port);
+
+    application.destroy();
+
+    try {
+      application.waitFor();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while stopping the shared application", e);
+    }
+
+    waitForPortToClose(port);
+  }
+
+  /**
+   * Runs StopApp for the port the application was started on, which has the JVM Grails forked shut down through
+   * the kill switch it listens for on the next port.
+   */
+  private void stopThroughGrails(int port) {
+    String previousPort = System.getProperty("server.port");
+    System.setProperty("server.port", String.valueOf(port));
+
+    try {
+      runGrails("StopApp");
+    } catch (MojoExecutionException e) {
+      getLog().warn("Unable to stop the shared application through Grails: " + e.getMessage());
+    } finally {
+      if (previousPort == null)
+        System.clearProperty("server.port");
+      else
+        System.setProperty("server.port", previousPort);
+    }
+  }
+
+  private void waitForPortToClose(int port) throws MojoExecutionException {
+    final long deadline = System.currentTimeMillis() + functionalStartupTimeout * 1000L;
+
+    while (System.currentTimeMillis() < deadline) {
+      try {
+        new Socket("localhost", port).close();
+      } catch (IOException closed) {
+        return;
+      }
+
+      try {
+        Thread.sleep(1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("Interrupted while stopping the shared application", e);
+      }
+    }
+
+    throw new MojoExecutionException("The shared application still listens on port " + port + " after " +
+      functionalStartupTimeout + " seconds, see " + new File(project.getBuild().getDirectory(), "grails-fork/functional-app.log"));
+  }
+
+  private String contextPath() throws MojoExecutionException {
+    String context = functionalContextPath;
+
+    if (context == null) {
+      context = getGrailsServices().readProjectDescriptor().getAppName();
+    }
+
+    if (!context.startsWith("/"))
+      context = "/" + context;
+    if (!context.endsWith("/"))
+      context = context + "/";
+
+    return context;
+  }
+
+  /**
+   * Finds a free port for the application whose next port is free as well, Grails listens on that one for StopApp
+   * when it forks RunApp.
+   */
+  private int findFreePort() throws MojoExecutionException {
+    try {
+      for (int attempt = 0; attempt < 10; attempt++) {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+          int port = socket.getLocalPort();
+
+          if (port < 65535 && isFree(port + 1))
+            return port;
+        } finally {
+          socket.close();
+        }
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to find a free port for the shared application", e);
+    }
+
+    throw new MojoExecutionException("Unable to find two free ports in a row for the shared application");
+  }
+
+  private static boolean isFree(int port) {
+    try {
+      new ServerSocket(port).close();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Polls the application until it answers an HTTP request at all - any status will do, a 404 still means the
+   * container is up - or gives up if the fork dies or the timeout passes.
+   */
+  private void waitForApplication(Process application, String baseUrl) throws MojoExecutionException {
+    final long deadline = System.currentTimeMillis() + functionalStartupTimeout * 1000L;
+
+    getLog().info("Waiting for the shared application at " + baseUrl);
+
+    while (System.currentTimeMillis() < deadline) {
+      try {
+        int exitValue = application.exitValue();
+        throw new MojoExecutionException("The shared application exited with " + exitValue + " before it was ready, see " +
+          new File(project.getBuild().getDirectory(), "grails-fork/functional-app.log"));
+      } catch (IllegalThreadStateException stillRunning) {
+        // good, keep waiting
+      }
+
+      try {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl).openConnection();
+        connection.setConnectTimeout(1000);
+        connection.setReadTimeout(5000);
+        try {
+          connection.getResponseCode();
+          getLog().info("Shared application is up");
+          return;
+        } finally {
+          connection.disconnect();
+        }
+      } catch (IOException notYet) {
+        // not listening yet
+      }
+
+      try {
+        Thread.sleep(1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new MojoExecutionException("Interrupted waiting for the shared application", e);
+      }
+    }
+
+    throw new MojoExecutionException("The shared application did not start within " + functionalStartupTimeout + " seconds");
+  }
 }
@@ -51,8 +51,10 @@ public class MvnGrailsAppWarMojo extends MvnWarMojo {
   public void execute() throws MojoExecutionException, MojoFailureException {
     super.execute();
 
-    // Make the WAR file the build artifact.
-    artifact.setFile(warFile);
-    artifact.setArtifactHandler(artifactHandler);
+    // Make the WAR file the build artifact, there is none when the WAR is exploded.
+    if (warFile != null) {
+      artifact.setFile(warFile);
+      artifact.setArtifactHandler(artifactHandler);
+    }
   }
 }
@@ -20,7 +20,6 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.plugins.annotations.ResolutionScope;
 
 /**
  * Validate consistency between Grails and Maven settings.
@@ -30,7 +29,7 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
  * @description Determines whether the current directory contains a Grails application or not, and creates one in the latter case.
  * @since 0.1
  */
-@Mojo(name = "init", requiresProject = true, requiresDependencyResolution = ResolutionScope.TEST, defaultPhase = LifecyclePhase.INITIALIZE)
+@Mojo(name = "init", requiresProject = true, defaultPhase = LifecyclePhase.INITIALIZE)
 public class MvnInitializeMojo extends AbstractGrailsMojo {
 
   /**
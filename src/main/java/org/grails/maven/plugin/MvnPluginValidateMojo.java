@@ -20,7 +20,6 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.grails.maven.plugin.tools.GrailsPluginProject;
 
 /**
@@ -31,7 +30,7 @@ import org.grails.maven.plugin.tools.GrailsPluginProject;
  * @description Validate consistency between Grails (*GrailsPlugin.groovy) and Maven (pom.xml) settings.
  * @since 1.0
  */
-@Mojo(name = "validate-plugin", requiresProject = true, requiresDependencyResolution = ResolutionScope.TEST, defaultPhase = LifecyclePhase.VALIDATE)
+@Mojo(name = "validate-plugin", requiresProject = true, defaultPhase = LifecyclePhase.VALIDATE)
 public class MvnPluginValidateMojo extends AbstractGrailsMojo {
 
   /**
@@ -15,6 +15,8 @@
  */
 package org.grails.maven.plugin;
 
+import java.io.File;
+
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -89,10 +91,17 @@ public class MvnTestMojo extends AbstractGrailsMojo {
       }
     }
 
+    if (runTestPhasesInParallel) {
+      runPhasesInForkedJvms();
+      return;
+    }
+
+    if (isEmptyShard("--unit"))
+      return;
 
     try {
       env = "test";
-      runGrails("TestApp", "--unit");
+      runGrails("TestApp", testAppArgs("--unit"));
     } catch (MojoExecutionException me) {
       if (!testFailureIgnore) {
         throw me;
@@ -101,4 +110,75 @@ public class MvnTestMojo extends AbstractGrailsMojo {
       env = null;
     }
   }
+
+  /**
+   * Runs the unit phase and the integration/functional phase side by side, each in its own JVM and
+   * reporting into its own directory, and fails once both have finished if either of them failed. The
+   * application is compiled and packaged here first, each fork then works on a copy of its own.
+   * <p>
+   * When Grails forks TestApp itself, each of those JVMs would start one more, so the phases are then
+   * left to a single TestApp run in the JVM Grails forks.
+   */
+  private void runPhasesInForkedJvms() throws MojoExecutionException {
+    File reportsDir = new File(project.getBuild().getDirectory(), "test-reports");
+
+    Process unit = null;
+    Process functional = null;
+
+    try {
+      env = "test";
+      prepareForForks();
+
+      if (isForkedByGrails("TestApp")) {
+        getLog().info("Grails forks TestApp itself (grails.project.fork.test), running the test phases in its fork one after the other.");
+        runPhasesInGrailsFork();
+        return;
+      }
+
+      if (!isEmptyShard("--unit"))
+        unit = forkGrails("unit", "TestApp", testAppArgs("--unit"), new File(reportsDir, "unit"));
+      try {
+        if (!isEmptyShard("--integration --functional"))
+          functional = forkGrails("functional", "TestApp", testAppArgs("--integration --functional"), new File(reportsDir, "functional"));
+      } catch (MojoExecutionException me) {
+        if (unit != null)
+          unit.destroy();
+        throw me;
+      }
+    } finally {
+      env = null;
+    }
+
+    int unitResult = unit == null ? 0 : waitForFork("unit", unit);
+    int functionalResult = functional == null ? 0 : waitForFork("functional", functional);
+
+    StringBuilder failures = new StringBuilder();
+    if (unitResult != 0)
+      failures.append("unit tests returned ").append(unitResult).append(". ");
+    if (functionalResult != 0)
+      failures.append("integration/functional tests returned ").append(functionalResult).append(". ");
+
+    if (failures.length() > 0) {
+      failures.append("See the logs in ").append(new File(project.getBuild().getDirectory(), "grails-fork"));
+
+      if (testFailureIgnore) {
+        getLog().error(failures.toString());
+      } else {
+        throw new MojoExecutionException("Grails " + failures);
+      }
+    }
+  }
+
+  private void runPhasesInGrailsFork() throws MojoExecutionException {
+    if (isEmptyShard("--unit --integration --functional"))
+      return;
+
+    try {
+      runGrails("TestApp", testAppArgs("--unit --integration --functional"));
+    } catch (MojoExecutionException me) {
+      if (!testFailureIgnore) {
+        throw me;
+      }
+    }
+  }
 }
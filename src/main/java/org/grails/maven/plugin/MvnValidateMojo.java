@@ -20,7 +20,6 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.grails.maven.plugin.tools.GrailsProject;
 
 /**
@@ -31,7 +30,7 @@ import org.grails.maven.plugin.tools.GrailsProject;
  * @description Validate consistency between Grails (application.properties) and Maven (pom.xml) settings.
  * @since 0.1
  */
-@Mojo(name = "validate", requiresProject = true, requiresDependencyResolution = ResolutionScope.TEST, defaultPhase = LifecyclePhase.VALIDATE)
+@Mojo(name = "validate", requiresProject = true, defaultPhase = LifecyclePhase.VALIDATE)
 public class MvnValidateMojo extends AbstractGrailsMojo {
 
   /**
@@ -16,17 +16,21 @@
 package org.grails.maven.plugin;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.model.Build;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProjectHelper;
+import org.grails.maven.plugin.tools.HardLinks;
 
 /**
  * Creates a WAR archive for the project and puts it in the usual Maven
@@ -41,6 +45,14 @@ import org.apache.maven.project.MavenProjectHelper;
 public class MvnWarMojo extends AbstractGrailsMojo {
   protected File warFile;
 
+  /**
+   * Build the WAR exploded into this directory, for local deploys, instead of as an archive. Grails only writes the
+   * application's classes and resources; the jars in WEB-INF/lib are hard links to the files in the local
+   * repository where the file system allows it, copies otherwise. Nothing must write to them.
+   */
+  @Parameter(property = "grails.war.explodedDirectory")
+  protected File explodedDirectory;
+
   /**
    */
   @Component
@@ -63,12 +75,57 @@ public class MvnWarMojo extends AbstractGrailsMojo {
 
       projectHelper.addResource(project, project.getBasedir().getAbsolutePath(), Arrays.asList("application.properties"), Collections.emptyList());
 
+      if (explodedDirectory != null) {
+        warFile = null;
+        buildExplodedWar();
+        return;
+      }
+
       try {
         env = "prod";
-        runGrails("War", warFile.toString());
+        runGrailsWar(warFile);
       } finally {
         env = null;
       }
     }
   }
+
+  private void buildExplodedWar() throws MojoExecutionException {
+    File libDir = new File(explodedDirectory, "WEB-INF/lib");
+
+    try {
+      // jars of dependencies that have since been removed must go
+      FileUtils.deleteDirectory(libDir);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to clean " + libDir, e);
+    }
+
+    try {
+      env = "prod";
+      runGrailsExploded("War", "--nojars", explodedDirectory);
+    } finally {
+      env = null;
+    }
+
+    int linked = 0;
+    int copied = 0;
+
+    for (File jar : getRuntimeDependencyFiles()) {
+      if (!jar.isFile()) {
+        getLog().warn("Not adding " + jar + " to " + libDir + ", it is not a jar");
+        continue;
+      }
+
+      try {
+        if (HardLinks.linkOrCopy(jar, new File(libDir, jar.getName())))
+          linked++;
+        else
+          copied++;
+      } catch (IOException e) {
+        throw new MojoExecutionException("Unable to add " + jar + " to " + libDir, e);
+      }
+    }
+
+    getLog().info("Built exploded WAR in " + explodedDirectory + " with " + linked + " linked and " + copied + " copied jars");
+  }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Downloads everything a Grails build of the project needs and extracts its plugins into the central plugin
+ * directory, without starting Grails - for warming up a build image or going offline. Artifacts are resolved and
+ * plugins extracted in parallel, and the resolution is recorded for later builds run with
+ * -Drun.preferLocalRepository=true to replay.
+ *
+ * @version $Id$
+ * @description Downloads the dependencies and extracts the plugins of a Grails project.
+ * @since 4.2
+ */
+@Mojo(name = "prefetch", requiresProject = true)
+public class PrefetchMojo extends AbstractGrailsMojo {
+
+  /**
+   * How many artifacts to download and plugins to extract at once, 0 for one per processor.
+   */
+  @Parameter(property = "grails.prefetch.threads", defaultValue = "0")
+  private int threads;
+
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    resolverThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    preferLocalRepository = true;
+
+    long start = System.currentTimeMillis();
+    resolveClasspathIfNecessary();
+
+    getLog().info("Prefetched " + getResolvedArtifacts().size() + " dependencies and " + getPluginDirectories().size() +
+      " plugins in " + (System.currentTimeMillis() - start) + "ms");
+  }
+}
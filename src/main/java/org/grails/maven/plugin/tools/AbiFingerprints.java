@@ -0,0 +1,228 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Fingerprints the ABI of jars and class directories - the public and protected signatures of their public
+ * classes as described by {@link ClassFileReader#getAbi()}. A dependency whose implementation changed but whose
+ * fingerprint did not cannot change the result of compiling against it.
+ *
+ * Reading every class of a jar is not cheap, so the fingerprints of jars are cached in a file by path, size and
+ * last modified time. Class directories (other modules of a reactor build) are always read.
+ *
+ * @since 4.2
+ */
+public class AbiFingerprints {
+
+  private final File cacheFile;
+  private final Map<String, String> cache = new TreeMap<String, String>();
+  private boolean changed;
+
+  public AbiFingerprints(File cacheFile) {
+    this.cacheFile = cacheFile;
+
+    if (cacheFile.isFile()) {
+      try {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), "UTF-8"));
+        try {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            int tab = line.indexOf('\t');
+            if (tab > 0)
+              cache.put(line.substring(tab + 1), line.substring(0, tab));
+          }
+        } finally {
+          reader.close();
+        }
+      } catch (IOException e) {
+        cache.clear(); // start again
+      }
+    }
+  }
+
+  /**
+   * @param artifactFile a jar or a directory of classes.
+   * @return the fingerprint of its ABI.
+   */
+  public String of(File artifactFile) throws IOException {
+    if (artifactFile.isDirectory())
+      return fingerprintDirectory(artifactFile);
+
+    String key = artifactFile.getAbsolutePath() + "|" + artifactFile.length() + "|" + artifactFile.lastModified();
+    String fingerprint = cache.get(key);
+
+    if (fingerprint == null) {
+      fingerprint = fingerprintJar(artifactFile);
+      cache.put(key, fingerprint);
+      changed = true;
+    }
+
+    return fingerprint;
+  }
+
+  /**
+   * Writes the cache back if anything was added to it. Entries for jars that have since changed are dropped.
+   */
+  public void save() throws IOException {
+    if (!changed) return;
+
+    cacheFile.getParentFile().mkdirs();
+
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(cacheFile), "UTF-8"));
+    try {
+      for (Map.Entry<String, String> entry : cache.entrySet()) {
+        String[] parts = entry.getKey().split("\\|");
+        File file = new File(parts[0]);
+
+        if (parts.length == 3 && file.length() == Long.parseLong(parts[1]) && file.lastModified() == Long.parseLong(parts[2]))
+          writer.print(entry.getValue() + "\t" + entry.getKey() + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+
+    if (writer.checkError())
+      throw new IOException("Unable to write " + cacheFile);
+  }
+
+  /**
+   * @return the classes in a jar or directory, in internal form.
+   */
+  public static Set<String> classesIn(File artifactFile) throws IOException {
+    Set<String> classes = new TreeSet<String>();
+
+    if (artifactFile.isDirectory()) {
+      List<File> classFiles = new ArrayList<File>();
+      findClassFiles(artifactFile, classFiles);
+      int prefix = artifactFile.getAbsolutePath().length() + 1;
+
+      for (File classFile : classFiles) {
+        String path = classFile.getAbsolutePath().substring(prefix).replace(File.separatorChar, '/');
+        classes.add(path.substring(0, path.length() - ".class".length()));
+      }
+    } else {
+      ZipFile zip = new ZipFile(artifactFile);
+      try {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+          String name = entries.nextElement().getName();
+          if (name.endsWith(".class"))
+            classes.add(name.substring(0, name.length() - ".class".length()));
+        }
+      } finally {
+        zip.close();
+      }
+    }
+
+    return classes;
+  }
+
+  private static String fingerprintJar(File jar) throws IOException {
+    List<String> abis = new ArrayList<String>();
+    ZipFile zip = new ZipFile(jar);
+
+    try {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+
+        if (entry.getName().endsWith(".class") && !entry.getName().startsWith("META-INF/")) {
+          InputStream in = zip.getInputStream(entry);
+          try {
+            addAbi(in, abis);
+          } finally {
+            in.close();
+          }
+        }
+      }
+    } finally {
+      zip.close();
+    }
+
+    return fingerprint(abis);
+  }
+
+  private static String fingerprintDirectory(File dir) throws IOException {
+    List<File> classFiles = new ArrayList<File>();
+    findClassFiles(dir, classFiles);
+
+    List<String> abis = new ArrayList<String>();
+
+    for (File classFile : classFiles) {
+      InputStream in = new FileInputStream(classFile);
+      try {
+        addAbi(in, abis);
+      } finally {
+        in.close();
+      }
+    }
+
+    return fingerprint(abis);
+  }
+
+  private static void addAbi(InputStream classFile, List<String> abis) throws IOException {
+    String abi = ClassFileReader.read(classFile).getAbi();
+
+    if (abi != null)
+      abis.add(abi);
+  }
+
+  private static String fingerprint(List<String> abis) {
+    Collections.sort(abis);
+
+    MessageDigest digest = Fingerprints.newDigest();
+    for (String abi : abis) {
+      Fingerprints.update(digest, abi);
+    }
+
+    return Fingerprints.hex(digest.digest());
+  }
+
+  private static void findClassFiles(File dir, List<File> classFiles) {
+    File[] files = dir.listFiles();
+
+    if (files == null) return;
+
+    for (File file : files) {
+      if (file.isDirectory())
+        findClassFiles(file, classFiles);
+      else if (file.getName().endsWith(".class"))
+        classFiles.add(file);
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositoryCache;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.ArtifactProperties;
+import org.eclipse.aether.artifact.ArtifactType;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.DependencyVisitor;
+import org.eclipse.aether.graph.Exclusion;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Collects and resolves the dependencies of a project with the repository system Maven itself uses, instead of
+ * maven-dependency-tree and the legacy ArtifactCollector. Conflicts are settled by the session's graph
+ * transformers, nearest wins as before, and the artifacts are returned in the same form and order as the legacy
+ * tree walk gives them: Maven artifacts in dependency tree order, with scope and dependency trail.
+ *
+ * POMs are cached in the session's repository cache, shared by every module of the build, and collected with the
+ * resolver's parallel collector where it has one. The artifacts themselves are resolved several at a time.
+ *
+ * @since 4.2
+ */
+public class AetherDependencyCollector {
+
+  private final RepositorySystem repositorySystem;
+  private final RepositorySystemSession session;
+  private final List<RemoteRepository> repositories;
+  private final ArtifactFactory artifactFactory;
+  private final int threads;
+
+  public AetherDependencyCollector(RepositorySystem repositorySystem, RepositorySystemSession session, List<RemoteRepository> repositories,
+                                   ArtifactFactory artifactFactory, int threads) {
+    DefaultRepositorySystemSession collectingSession = new DefaultRepositorySystemSession(session);
+
+    if (collectingSession.getCache() == null)
+      collectingSession.setCache(new DefaultRepositoryCache());
+
+    // breadth first collection downloads POMs in parallel, resolvers without it ignore the setting
+    if (threads > 1 && !collectingSession.getConfigProperties().containsKey("aether.dependencyCollector.impl"))
+      collectingSession.setConfigProperty("aether.dependencyCollector.impl", "bf");
+
+    this.repositorySystem = repositorySystem;
+    this.session = collectingSession;
+    this.repositories = repositories;
+    this.artifactFactory = artifactFactory;
+    this.threads = threads;
+  }
+
+  /**
+   * @return the project's dependencies, resolved, in dependency tree order. The project itself is left out.
+   */
+  public Set<org.apache.maven.artifact.Artifact> collect(final MavenProject project) throws DependencyCollectionException, ArtifactResolutionException {
+    List<Dependency> dependencies = new ArrayList<Dependency>();
+    for (org.apache.maven.model.Dependency dependency : project.getDependencies()) {
+      dependencies.add(toDependency(dependency));
+    }
+
+    List<Dependency> managed = new ArrayList<Dependency>();
+    if (project.getDependencyManagement() != null) {
+      for (org.apache.maven.model.Dependency dependency : project.getDependencyManagement().getDependencies()) {
+        managed.add(toDependency(dependency));
+      }
+    }
+
+    CollectRequest request = new CollectRequest(dependencies, managed, repositories);
+    request.setRootArtifact(new DefaultArtifact(project.getGroupId(), project.getArtifactId(), "pom", project.getVersion()));
+
+    DependencyNode root = repositorySystem.collectDependencies(session, request).getRoot();
+
+    final List<DependencyNode> nodes = new ArrayList<DependencyNode>();
+    final List<List<String>> trails = new ArrayList<List<String>>();
+    final String projectId = project.getArtifact().getId();
+
+    root.accept(new DependencyVisitor() {
+      private final LinkedList<String> path = new LinkedList<String>();
+
+      public boolean visitEnter(DependencyNode node) {
+        if (node.getDependency() == null) return true; // the root
+
+        Artifact artifact = node.getDependency().getArtifact();
+        path.add(artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + getType(artifact) +
+          (artifact.getClassifier().length() == 0 ? "" : ":" + artifact.getClassifier()) + ":" + artifact.getBaseVersion());
+
+        if (!(artifact.getArtifactId().equals(project.getArtifactId()) && artifact.getGroupId().equals(project.getGroupId()))) {
+          List<String> trail = new ArrayList<String>();
+          trail.add(projectId);
+          trail.addAll(path);
+
+          nodes.add(node);
+          trails.add(trail);
+        }
+
+        return true;
+      }
+
+      public boolean visitLeave(DependencyNode node) {
+        if (node.getDependency() != null) path.removeLast();
+        return true;
+      }
+    });
+
+    List<ArtifactResult> results = resolve(nodes);
+
+    Set<org.apache.maven.artifact.Artifact> artifacts = new LinkedHashSet<org.apache.maven.artifact.Artifact>();
+    for (int i = 0; i < nodes.size(); i++) {
+      artifacts.add(toMavenArtifact(nodes.get(i).getDependency(), results.get(i).getArtifact(), trails.get(i)));
+    }
+
+    return artifacts;
+  }
+
+  private List<ArtifactResult> resolve(List<DependencyNode> nodes) throws ArtifactResolutionException {
+    List<ArtifactRequest> requests = new ArrayList<ArtifactRequest>();
+    for (DependencyNode node : nodes) {
+      requests.add(new ArtifactRequest(node));
+    }
+
+    if (threads <= 1 || requests.size() <= 1)
+      return repositorySystem.resolveArtifacts(session, requests);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<ArtifactResult>> futures = new ArrayList<Future<ArtifactResult>>();
+
+    try {
+      for (final ArtifactRequest request : requests) {
+        futures.add(executor.submit(new Callable<ArtifactResult>() {
+          public ArtifactResult call() throws ArtifactResolutionException {
+            return repositorySystem.resolveArtifact(session, request);
+          }
+        }));
+      }
+
+      List<ArtifactResult> results = new ArrayList<ArtifactResult>();
+      for (Future<ArtifactResult> future : futures) {
+        results.add(future.get());
+      }
+
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while resolving dependencies", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof ArtifactResolutionException)
+        throw (ArtifactResolutionException) e.getCause();
+      throw new IllegalStateException("Unable to resolve dependencies", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Dependency toDependency(org.apache.maven.model.Dependency dependency) {
+    ArtifactType type = session.getArtifactTypeRegistry().get(dependency.getType());
+
+    String extension = type == null ? dependency.getType() : type.getExtension();
+    String classifier = dependency.getClassifier() != null && dependency.getClassifier().length() > 0 ? dependency.getClassifier()
+      : type == null ? "" : type.getClassifier();
+
+    Map<String, String> properties = null;
+    if (dependency.getSystemPath() != null && dependency.getSystemPath().length() > 0)
+      properties = Collections.singletonMap(ArtifactProperties.LOCAL_PATH, dependency.getSystemPath());
+
+    Artifact artifact = new DefaultArtifact(dependency.getGroupId(), dependency.getArtifactId(), classifier, extension,
+      dependency.getVersion(), properties, type);
+
+    List<Exclusion> exclusions = new ArrayList<Exclusion>();
+    for (org.apache.maven.model.Exclusion exclusion : dependency.getExclusions()) {
+      exclusions.add(new Exclusion(exclusion.getGroupId(), exclusion.getArtifactId(), "*", "*"));
+    }
+
+    return new Dependency(artifact, dependency.getScope(), dependency.isOptional(), exclusions);
+  }
+
+  private org.apache.maven.artifact.Artifact toMavenArtifact(Dependency dependency, Artifact resolved, List<String> trail) {
+    String classifier = resolved.getClassifier().length() == 0 ? null : resolved.getClassifier();
+
+    org.apache.maven.artifact.Artifact artifact = artifactFactory.createDependencyArtifact(resolved.getGroupId(), resolved.getArtifactId(),
+      VersionRange.createFromVersion(resolved.getBaseVersion()), getType(resolved), classifier, dependency.getScope(), dependency.isOptional());
+
+    artifact.setVersion(resolved.getVersion());
+    artifact.setFile(resolved.getFile());
+    artifact.setResolved(true);
+    artifact.setDependencyTrail(trail);
+
+    return artifact;
+  }
+
+  private static String getType(Artifact artifact) {
+    return artifact.getProperty(ArtifactProperties.TYPE, artifact.getExtension());
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A cache of compile outputs, each stored as a zip named after a key that identifies everything that went into the
+ * compile. Entries live in a local directory, shared by all builds on the machine, and can also be fetched from
+ * (and pushed to) an HTTP server that answers GET and PUT for &lt;url&gt;/&lt;key&gt;.zip - any plain file server
+ * with PUT enabled will do.
+ *
+ * Entries are written to a temporary file and renamed into place, so concurrent builds never see half an entry.
+ *
+ * @since 4.2
+ */
+public class BuildCache {
+
+  private static final int TIMEOUT = 30000;
+
+  private final File directory;
+  private final String remoteUrl;
+
+  /**
+   * @param directory the local cache directory.
+   * @param remoteUrl the base URL of the remote cache, or null for none.
+   */
+  public BuildCache(File directory, String remoteUrl) {
+    this.directory = directory;
+    this.remoteUrl = remoteUrl == null || remoteUrl.endsWith("/") ? remoteUrl : remoteUrl + "/";
+  }
+
+  public File getLocalEntry(String key) {
+    return new File(new File(directory, key.substring(0, 2)), key + ".zip");
+  }
+
+  /**
+   * Downloads an entry from the remote cache into the local one.
+   *
+   * @return the local entry, or null if there is no remote cache or it does not have the entry.
+   */
+  public File fetch(String key) throws IOException {
+    if (remoteUrl == null) return null;
+
+    HttpURLConnection connection = open(key, "GET");
+
+    try {
+      if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND)
+        return null;
+      if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+        throw new IOException("GET " + connection.getURL() + " returned " + connection.getResponseCode());
+
+      File entry = getLocalEntry(key);
+      File temp = tempFileFor(entry);
+
+      InputStream in = connection.getInputStream();
+      try {
+        FileUtils.copyInputStreamToFile(in, temp);
+      } finally {
+        in.close();
+      }
+
+      moveIntoPlace(temp, entry);
+
+      return entry;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Replaces the contents of a directory with those of a cache entry. The files get the current time as their last
+   * modified time so that they are newer than the sources they were compiled from.
+   */
+  public void restore(File entry, File outputDir) throws IOException {
+    FileUtils.deleteDirectory(outputDir);
+    outputDir.mkdirs();
+
+    String outputPath = outputDir.getCanonicalPath() + File.separator;
+    ZipInputStream zip = new ZipInputStream(new FileInputStream(entry));
+
+    try {
+      ZipEntry zipEntry;
+
+      while ((zipEntry = zip.getNextEntry()) != null) {
+        File file = new File(outputDir, zipEntry.getName());
+
+        if (!file.getCanonicalPath().startsWith(outputPath))
+          throw new IOException("Cache entry " + entry + " contains " + zipEntry.getName() + " which is outside of " + outputDir);
+
+        if (zipEntry.isDirectory()) {
+          file.mkdirs();
+        } else {
+          file.getParentFile().mkdirs();
+          OutputStream out = new FileOutputStream(file);
+          try {
+            IOUtils.copy(zip, out);
+          } finally {
+            out.close();
+          }
+        }
+      }
+    } finally {
+      zip.close();
+    }
+  }
+
+  /**
+   * Stores the contents of a directory in the local cache.
+   *
+   * @return the new local entry.
+   */
+  public File store(String key, File outputDir) throws IOException {
+    File entry = getLocalEntry(key);
+    File temp = tempFileFor(entry);
+
+    List<File> files = new ArrayList<File>();
+    findFiles(outputDir, files);
+
+    int prefix = outputDir.getAbsolutePath().length() + 1;
+    ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(temp));
+
+    try {
+      for (File file : files) {
+        zip.putNextEntry(new ZipEntry(file.getAbsolutePath().substring(prefix).replace(File.separatorChar, '/')));
+
+        InputStream in = new FileInputStream(file);
+        try {
+          IOUtils.copy(in, zip);
+        } finally {
+          in.close();
+        }
+
+        zip.closeEntry();
+      }
+    } finally {
+      zip.close();
+    }
+
+    moveIntoPlace(temp, entry);
+
+    return entry;
+  }
+
+  /**
+   * Uploads a local entry to the remote cache, if there is one.
+   */
+  public void push(String key, File entry) throws IOException {
+    if (remoteUrl == null) return;
+
+    HttpURLConnection connection = open(key, "PUT");
+
+    try {
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(entry.length());
+      connection.setRequestProperty("Content-Type", "application/zip");
+
+      OutputStream out = connection.getOutputStream();
+      try {
+        FileUtils.copyFile(entry, out);
+      } finally {
+        out.close();
+      }
+
+      int status = connection.getResponseCode();
+      if (status < 200 || status >= 300)
+        throw new IOException("PUT " + connection.getURL() + " returned " + status);
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private HttpURLConnection open(String key, String method) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(remoteUrl + key + ".zip").openConnection();
+    connection.setRequestMethod(method);
+    connection.setConnectTimeout(TIMEOUT);
+    connection.setReadTimeout(TIMEOUT);
+    connection.setUseCaches(false);
+    return connection;
+  }
+
+  private static File tempFileFor(File entry) throws IOException {
+    entry.getParentFile().mkdirs();
+    return File.createTempFile(entry.getName(), ".tmp", entry.getParentFile());
+  }
+
+  private static void moveIntoPlace(File temp, File entry) throws IOException {
+    if (!temp.renameTo(entry)) {
+      // someone else stored the same entry first, which is just as good
+      temp.delete();
+
+      if (!entry.exists())
+        throw new IOException("Unable to store build cache entry " + entry);
+    }
+  }
+
+  private static void findFiles(File dir, List<File> files) {
+    File[] children = dir.listFiles();
+
+    if (children == null) return;
+
+    for (File child : children) {
+      if (child.isDirectory())
+        findFiles(child, files);
+      else
+        files.add(child);
+    }
+  }
+}
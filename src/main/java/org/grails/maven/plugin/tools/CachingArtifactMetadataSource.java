@@ -0,0 +1,132 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.metadata.ResolutionGroup;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.repository.legacy.metadata.DefaultMetadataResolutionRequest;
+import org.apache.maven.repository.legacy.metadata.MetadataResolutionRequest;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Puts a {@link SessionCache} in front of the metadata source the dependency tree is built with, so that each
+ * module of a build does not read the same POMs again. The child artifacts are copied on the way out because the
+ * artifact collector changes them as it settles versions and scopes.
+ *
+ * Artifacts with an exclusion filter are not cached, as the children depend on the filter and there is no telling
+ * filters apart.
+ *
+ * @since 4.2
+ */
+public class CachingArtifactMetadataSource implements ArtifactMetadataSource {
+
+  private final ArtifactMetadataSource delegate;
+  private final SessionCache cache;
+
+  public CachingArtifactMetadataSource(ArtifactMetadataSource delegate, SessionCache cache) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  public ResolutionGroup retrieve(MetadataResolutionRequest request) throws ArtifactMetadataRetrievalException {
+    Artifact artifact = request.getArtifact();
+
+    if (artifact.getDependencyFilter() != null)
+      return delegate.retrieve(request);
+
+    String key = key(artifact, request.isResolveManagedVersions(), request.getLocalRepository(), request.getRemoteRepositories());
+    ResolutionGroup group = cache.getMetadata(key);
+
+    if (group == null) {
+      group = delegate.retrieve(request);
+
+      if (group != null) cache.putMetadata(key, group);
+    }
+
+    return copy(group);
+  }
+
+  public ResolutionGroup retrieve(Artifact artifact, ArtifactRepository localRepository, List<ArtifactRepository> remoteRepositories)
+    throws ArtifactMetadataRetrievalException {
+    return retrieve(new DefaultMetadataResolutionRequest().setArtifact(artifact).setLocalRepository(localRepository)
+      .setRemoteRepositories(remoteRepositories));
+  }
+
+  public List<ArtifactVersion> retrieveAvailableVersions(MetadataResolutionRequest request) throws ArtifactMetadataRetrievalException {
+    return delegate.retrieveAvailableVersions(request);
+  }
+
+  public List<ArtifactVersion> retrieveAvailableVersions(Artifact artifact, ArtifactRepository localRepository,
+                                                         List<ArtifactRepository> remoteRepositories) throws ArtifactMetadataRetrievalException {
+    return delegate.retrieveAvailableVersions(artifact, localRepository, remoteRepositories);
+  }
+
+  public List<ArtifactVersion> retrieveAvailableVersionsFromDeploymentRepository(Artifact artifact, ArtifactRepository localRepository,
+                                                                                 ArtifactRepository remoteRepository) throws ArtifactMetadataRetrievalException {
+    return delegate.retrieveAvailableVersionsFromDeploymentRepository(artifact, localRepository, remoteRepository);
+  }
+
+  /**
+   * The children's scopes follow the parent's scope and optional flag, so both are part of the key.
+   */
+  private static String key(Artifact artifact, boolean resolveManagedVersions, ArtifactRepository localRepository,
+                            List<ArtifactRepository> remoteRepositories) {
+    StringBuilder key = new StringBuilder(artifact.getId()).append('|').append(artifact.getScope()).append('|')
+      .append(artifact.isOptional()).append('|').append(resolveManagedVersions).append('|')
+      .append(localRepository == null ? "" : localRepository.getUrl());
+
+    if (remoteRepositories != null) {
+      for (ArtifactRepository repository : remoteRepositories) {
+        key.append('|').append(repository.getId()).append('=').append(repository.getUrl());
+      }
+    }
+
+    return key.toString();
+  }
+
+  private static ResolutionGroup copy(ResolutionGroup group) {
+    if (group == null) return null;
+
+    Set<Artifact> artifacts = null;
+    if (group.getArtifacts() != null) {
+      artifacts = new LinkedHashSet<Artifact>();
+      for (Artifact artifact : group.getArtifacts()) {
+        artifacts.add(ArtifactUtils.copyArtifact(artifact));
+      }
+    }
+
+    Map<String, Artifact> managedVersions = null;
+    if (group.getManagedVersions() != null) {
+      managedVersions = new LinkedHashMap<String, Artifact>();
+      for (Map.Entry<String, Artifact> managed : group.getManagedVersions().entrySet()) {
+        managedVersions.put(managed.getKey(), ArtifactUtils.copyArtifact(managed.getValue()));
+      }
+    }
+
+    return new ResolutionGroup(group.getPomArtifact(), group.getRelocatedArtifact(), artifacts, managedVersions,
+      group.getResolutionRepositories());
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads just enough of a class file to know which class it is, which source file it was compiled from and
+ * which other classes it refers to. The references are over-approximated: every class constant and every
+ * class named in a descriptor or signature counts, which is what is wanted for deciding what to recompile.
+ *
+ * It also describes the class's ABI - what code compiled against it can see: the public and protected
+ * signatures and constant values, but not method bodies or private members. Two builds of a class with the same
+ * ABI are interchangeable for anything compiled against them.
+ *
+ * Class names are in internal form, e.g. "com/acme/Book$Chapter".
+ *
+ * @since 4.2
+ */
+public class ClassFileReader {
+
+  private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([^;<>\\[()]+)[;<]");
+
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_PROTECTED = 0x0004;
+  private static final int ACC_SYNTHETIC = 0x1000;
+
+  /**
+   * The access flags that matter to code compiled against a class: public, protected, static, final,
+   * interface, abstract, annotation and enum.
+   */
+  private static final int ABI_FLAGS = 0x0001 | 0x0004 | 0x0008 | 0x0010 | 0x0200 | 0x0400 | 0x2000 | 0x4000;
+
+  private String className;
+  private String superName;
+  private String sourceFile;
+  private String abi;
+  private final Set<String> referencedClasses = new TreeSet<String>();
+
+  public static ClassFileReader read(InputStream classFile) throws IOException {
+    ClassFileReader reader = new ClassFileReader();
+    reader.parse(new DataInputStream(classFile));
+    return reader;
+  }
+
+  public String getClassName() {
+    return className;
+  }
+
+  public String getSuperName() {
+    return superName;
+  }
+
+  /**
+   * @return the SourceFile attribute, e.g. "Book.groovy", or null if the class was compiled without it.
+   */
+  public String getSourceFile() {
+    return sourceFile;
+  }
+
+  /**
+   * @return a description of the public API of the class, or null if the class is not public.
+   */
+  public String getAbi() {
+    return abi;
+  }
+
+  /**
+   * @return all classes this one refers to, not including itself.
+   */
+  public Set<String> getReferencedClasses() {
+    return referencedClasses;
+  }
+
+  private void parse(DataInputStream in) throws IOException {
+    if (in.readInt() != 0xCAFEBABE)
+      throw new IOException("Not a class file");
+
+    in.readUnsignedShort(); // minor
+    in.readUnsignedShort(); // major
+
+    int poolSize = in.readUnsignedShort();
+    String[] utf8 = new String[poolSize];
+    int[] classNameIndex = new int[poolSize];
+    int[] stringIndex = new int[poolSize];
+    Object[] constants = new Object[poolSize];
+
+    for (int i = 1; i < poolSize; i++) {
+      int tag = in.readUnsignedByte();
+
+      switch (tag) {
+        case 1: // Utf8
+          utf8[i] = in.readUTF();
+          break;
+        case 7: // Class
+          classNameIndex[i] = in.readUnsignedShort();
+          break;
+        case 8: // String
+          stringIndex[i] = in.readUnsignedShort();
+          break;
+        case 16: // MethodType
+        case 19: // Module
+        case 20: // Package
+          in.readUnsignedShort();
+          break;
+        case 15: // MethodHandle
+          in.readUnsignedByte();
+          in.readUnsignedShort();
+          break;
+        case 3: // Integer
+          constants[i] = in.readInt();
+          break;
+        case 4: // Float
+          constants[i] = in.readFloat();
+          break;
+        case 9: // Fieldref
+        case 10: // Methodref
+        case 11: // InterfaceMethodref
+        case 12: // NameAndType
+        case 17: // Dynamic
+        case 18: // InvokeDynamic
+          in.readInt();
+          break;
+        case 5: // Long
+          constants[i] = in.readLong();
+          i++;
+          break;
+        case 6: // Double
+          constants[i] = in.readDouble();
+          i++;
+          break;
+        default:
+          throw new IOException("Unknown constant pool tag " + tag);
+      }
+    }
+
+    // String constants refer to their text, resolve them now the whole pool is read
+    for (int i = 1; i < poolSize; i++) {
+      if (stringIndex[i] != 0)
+        constants[i] = "\"" + utf8[stringIndex[i]] + "\"";
+    }
+
+    int access = in.readUnsignedShort();
+    className = utf8[classNameIndex[in.readUnsignedShort()]];
+    int superIndex = in.readUnsignedShort();
+    superName = superIndex == 0 ? null : utf8[classNameIndex[superIndex]];
+
+    for (int i = 1; i < poolSize; i++) {
+      if (classNameIndex[i] != 0) {
+        String name = utf8[classNameIndex[i]];
+
+        if (name.startsWith("["))
+          addDescriptorClasses(name);
+        else
+          referencedClasses.add(name);
+      } else if (utf8[i] != null && utf8[i].indexOf(';') > 0) {
+        addDescriptorClasses(utf8[i]);
+      }
+    }
+
+    referencedClasses.remove(className);
+
+    StringBuilder header = new StringBuilder("class ").append(access & ABI_FLAGS).append(' ').append(className)
+      .append(" extends ").append(superName);
+
+    int interfaces = in.readUnsignedShort();
+    for (int i = 0; i < interfaces; i++) {
+      header.append(" implements ").append(utf8[classNameIndex[in.readUnsignedShort()]]);
+    }
+
+    List<String> members = new ArrayList<String>();
+
+    readMembers(in, "field", utf8, classNameIndex, constants, members);
+    readMembers(in, "method", utf8, classNameIndex, constants, members);
+
+    int attributes = in.readUnsignedShort();
+    for (int i = 0; i < attributes; i++) {
+      String name = utf8[in.readUnsignedShort()];
+      int length = in.readInt();
+
+      if ("SourceFile".equals(name)) {
+        sourceFile = utf8[in.readUnsignedShort()];
+      } else if ("Signature".equals(name)) {
+        header.append(" signature ").append(utf8[in.readUnsignedShort()]);
+      } else {
+        skipFully(in, length);
+      }
+    }
+
+    if ((access & ACC_PUBLIC) != 0 && (access & ACC_SYNTHETIC) == 0) {
+      Collections.sort(members);
+
+      StringBuilder sb = new StringBuilder(header).append('\n');
+      for (String member : members) {
+        sb.append(member).append('\n');
+      }
+      abi = sb.toString();
+    }
+  }
+
+  /**
+   * Reads the fields or methods, adding those visible outside the package to the ABI.
+   */
+  private static void readMembers(DataInputStream in, String kind, String[] utf8, int[] classNameIndex, Object[] constants,
+                                  List<String> abiMembers) throws IOException {
+    int members = in.readUnsignedShort();
+
+    for (int i = 0; i < members; i++) {
+      int access = in.readUnsignedShort();
+      String name = utf8[in.readUnsignedShort()];
+      String descriptor = utf8[in.readUnsignedShort()];
+
+      StringBuilder member = new StringBuilder(kind).append(' ').append(access & ABI_FLAGS).append(' ').append(name)
+        .append(' ').append(descriptor);
+
+      int attributes = in.readUnsignedShort();
+      for (int j = 0; j < attributes; j++) {
+        String attribute = utf8[in.readUnsignedShort()];
+        int length = in.readInt();
+
+        if ("Signature".equals(attribute)) {
+          member.append(" signature ").append(utf8[in.readUnsignedShort()]);
+        } else if ("ConstantValue".equals(attribute)) {
+          // constants are inlined by the compiler, so their value is part of the ABI
+          member.append(" = ").append(constants[in.readUnsignedShort()]);
+        } else if ("Exceptions".equals(attribute)) {
+          int exceptions = in.readUnsignedShort();
+          for (int k = 0; k < exceptions; k++) {
+            member.append(" throws ").append(utf8[classNameIndex[in.readUnsignedShort()]]);
+          }
+        } else {
+          skipFully(in, length);
+        }
+      }
+
+      // Groovy adds a synthetic, ever changing, __timeStamp field to every class
+      boolean visible = (access & (ACC_PUBLIC | ACC_PROTECTED)) != 0 && (access & ACC_SYNTHETIC) == 0;
+      if (visible && !name.startsWith("__timeStamp"))
+        abiMembers.add(member.toString());
+    }
+  }
+
+  private void addDescriptorClasses(String descriptor) {
+    Matcher matcher = DESCRIPTOR_CLASS.matcher(descriptor);
+
+    while (matcher.find()) {
+      referencedClasses.add(matcher.group(1));
+    }
+  }
+
+
+  private static void skipFully(DataInputStream in, int length) throws IOException {
+    while (length > 0) {
+      int skipped = in.skipBytes(length);
+      if (skipped <= 0)
+        throw new IOException("Truncated class file");
+      length -= skipped;
+    }
+  }
+}
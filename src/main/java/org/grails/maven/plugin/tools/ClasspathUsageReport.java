@@ -0,0 +1,176 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.maven.artifact.Artifact;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Reports the artifacts on the Grails classpath that no class or resource was loaded from while a Grails target
+ * ran, by scope, optionally with the pom exclusions that would drop them.
+ *
+ * An artifact only used by code paths the target did not exercise - production-only configuration, classes
+ * loaded on demand at runtime - is reported as well, so the report is a list of candidates to check rather than of
+ * jars that are safe to remove. Only the JVM Grails is started in is watched: a target Grails 2.3 and later runs in
+ * a JVM of its own (grails.project.fork) loads its classes out of sight and gets no report.
+ *
+ * @since 4.2
+ */
+public class ClasspathUsageReport {
+
+  private final Map<String, Set<String>> unusedByScope = new TreeMap<String, Set<String>>();
+  private final Map<String, Set<String>> exclusionsByDependency = new TreeMap<String, Set<String>>();
+  private final Set<String> unusedDirectDependencies = new TreeSet<String>();
+  private int artifacts;
+  private int unused;
+
+  /**
+   * @param artifacts the artifacts that were on the classpath.
+   * @param usedFiles the files classes or resources were loaded from.
+   */
+  public ClasspathUsageReport(Collection<Artifact> artifacts, Collection<File> usedFiles) {
+    Set<File> used = new HashSet<File>();
+    for (File file : usedFiles) {
+      used.add(file.getAbsoluteFile());
+    }
+
+    for (Artifact artifact : artifacts) {
+      if (artifact.getFile() == null) continue;
+
+      this.artifacts++;
+
+      if (used.contains(artifact.getFile().getAbsoluteFile())) continue;
+
+      unused++;
+
+      String scope = artifact.getScope() == null ? "compile" : artifact.getScope();
+      String id = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion();
+      List<String> trail = artifact.getDependencyTrail();
+
+      if (trail != null && trail.size() > 2) {
+        // brought in by the direct dependency at trail[1]
+        String direct = versionless(trail.get(1));
+        id += " (via " + direct + ")";
+        add(exclusionsByDependency, direct, artifact.getGroupId() + ":" + artifact.getArtifactId());
+      } else {
+        unusedDirectDependencies.add(artifact.getGroupId() + ":" + artifact.getArtifactId());
+      }
+
+      add(unusedByScope, scope, id);
+    }
+  }
+
+  /**
+   * @return why there is no report for a target Grails ran in a JVM of its own.
+   */
+  public static String forkedTargetMessage(String targetName) {
+    return "Grails ran " + targetName + " in a JVM of its own (grails.project.fork), where the classes it loads are not " +
+      "recorded, so there is no classpath usage report for it. Turn that fork off in BuildConfig.groovy to record them.";
+  }
+
+  public int getArtifactCount() {
+    return artifacts;
+  }
+
+  public int getUnusedCount() {
+    return unused;
+  }
+
+  public void write(File reportFile, String targetName, boolean suggestExclusions) throws IOException {
+    reportFile.getAbsoluteFile().getParentFile().mkdirs();
+
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8"));
+
+    try {
+      writer.println("# " + unused + " of " + artifacts + " artifacts served no class or resource during " + targetName + ".");
+      writer.println("# Code paths " + targetName + " did not exercise may still need them, check before excluding.");
+      writer.println("# Only the Grails JVM is recorded, not JVMs Grails forks itself (grails.project.fork).");
+
+      for (Map.Entry<String, Set<String>> scope : unusedByScope.entrySet()) {
+        writer.println();
+        writer.println("[" + scope.getKey() + "]");
+        for (String id : scope.getValue()) {
+          writer.println(id);
+        }
+      }
+
+      if (suggestExclusions) {
+        writer.println();
+        writer.println("<!-- Suggested exclusions -->");
+
+        for (Map.Entry<String, Set<String>> dependency : exclusionsByDependency.entrySet()) {
+          String[] coordinates = dependency.getKey().split(":");
+
+          writer.println("<dependency>");
+          writer.println("  <groupId>" + coordinates[0] + "</groupId>");
+          writer.println("  <artifactId>" + coordinates[1] + "</artifactId>");
+          writer.println("  <exclusions>");
+          for (String exclusion : dependency.getValue()) {
+            String[] excluded = exclusion.split(":");
+            writer.println("    <exclusion>");
+            writer.println("      <groupId>" + excluded[0] + "</groupId>");
+            writer.println("      <artifactId>" + excluded[1] + "</artifactId>");
+            writer.println("    </exclusion>");
+          }
+          writer.println("  </exclusions>");
+          writer.println("</dependency>");
+        }
+
+        for (String direct : unusedDirectDependencies) {
+          writer.println("<!-- " + direct + " is declared directly, consider removing it -->");
+        }
+      }
+    } finally {
+      writer.close();
+    }
+
+    if (writer.checkError())
+      throw new IOException("Unable to write " + reportFile);
+  }
+
+  /**
+   * @param trailEntry groupId:artifactId:type[:classifier]:version
+   * @return groupId:artifactId
+   */
+  private static String versionless(String trailEntry) {
+    String[] parts = trailEntry.split(":");
+
+    return parts.length < 2 ? trailEntry : parts[0] + ":" + parts[1];
+  }
+
+  private static void add(Map<String, Set<String>> map, String key, String value) {
+    Set<String> values = map.get(key);
+
+    if (values == null) {
+      values = new TreeSet<String>();
+      map.put(key, values);
+    }
+
+    values.add(value);
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * What the Grails Clean script deletes: the compiled classes, test classes, resources, plugin classes and
+ * precompiled GSPs, web-app/WEB-INF/classes, web-app/WEB-INF/lib, web-app/plugins, the *.resolve reports in the
+ * project work directory, the war and the test reports (all but TESTS-TestSuites.xml, which --rerun reads). Each
+ * Grails run records them as its BuildSettings had them, so that a clean can delete them without starting Grails,
+ * together with the plugin directories that were installed so their clean hooks can be found.
+ *
+ * It is stored as a tab separated text file, one record per line.
+ *
+ * @since 4.2
+ */
+public class CleanTargets {
+
+  public static final String RECORD_FILE = "grails-clean.txt";
+
+  private static final String WORK_DIR = "work";
+  private static final String DIRECTORY = "dir";
+  private static final String FILE = "file";
+  private static final String TEST_REPORTS = "reports";
+  private static final String PLUGIN = "plugin";
+
+  private static final String TEST_SUITES_REPORT = "TESTS-TestSuites.xml";
+  private static final Pattern CLEAN_HOOK = Pattern.compile("\\beventClean\\w*");
+
+  private final File projectWorkDir;
+  private final Set<File> directories = new LinkedHashSet<File>();
+  private final Set<File> files = new LinkedHashSet<File>();
+  private final Set<File> pluginDirectories = new LinkedHashSet<File>();
+  private File testReportsDir;
+
+  public CleanTargets(File projectWorkDir) {
+    this.projectWorkDir = projectWorkDir;
+  }
+
+  /**
+   * @return what Grails cleans when the build directories are where the plugin puts them in the project work
+   *         directory and BuildConfig.groovy does not move anything.
+   */
+  public static CleanTargets fromConventions(File basedir, File projectWorkDir, File warFile) {
+    CleanTargets targets = new CleanTargets(projectWorkDir);
+
+    targets.addDirectory(new File(projectWorkDir, "classes"));
+    targets.addDirectory(new File(projectWorkDir, "test-classes"));
+    targets.addDirectory(new File(projectWorkDir, "resources"));
+    targets.addDirectory(new File(projectWorkDir, "plugin-classes"));
+    targets.addDirectory(new File(projectWorkDir, "gspcompile"));
+    targets.addDirectory(new File(basedir, "web-app/WEB-INF/classes"));
+    targets.addDirectory(new File(basedir, "web-app/WEB-INF/lib"));
+    targets.addDirectory(new File(basedir, "web-app/plugins"));
+    targets.addFile(warFile);
+    targets.setTestReportsDir(new File(projectWorkDir, "test-reports"));
+
+    return targets;
+  }
+
+  public void addDirectory(File directory) {
+    if (directory != null) directories.add(directory.getAbsoluteFile());
+  }
+
+  public void addFile(File file) {
+    if (file != null) files.add(file.getAbsoluteFile());
+  }
+
+  public void addPluginDirectory(File pluginDirectory) {
+    if (pluginDirectory != null) pluginDirectories.add(pluginDirectory.getAbsoluteFile());
+  }
+
+  public void setTestReportsDir(File testReportsDir) {
+    this.testReportsDir = testReportsDir == null ? null : testReportsDir.getAbsoluteFile();
+  }
+
+  public Set<File> getDirectories() {
+    return directories;
+  }
+
+  public Set<File> getFiles() {
+    return files;
+  }
+
+  public Set<File> getPluginDirectories() {
+    return pluginDirectories;
+  }
+
+  public File getTestReportsDir() {
+    return testReportsDir;
+  }
+
+  /**
+   * @return the first script that changes what a clean does - an event handler for CleanStart or CleanEnd, or a
+   *         Clean script of its own - in the project or one of its plugins, or null if Grails would run the clean
+   *         as it comes.
+   */
+  public File findCleanHook(File basedir) throws IOException {
+    List<File> roots = new ArrayList<File>();
+    roots.add(basedir);
+    roots.addAll(pluginDirectories);
+
+    for (File root : roots) {
+      File scripts = new File(root, "scripts");
+
+      for (String script : new String[]{"Clean.groovy", "_GrailsClean.groovy"}) {
+        if (new File(scripts, script).isFile())
+          return new File(scripts, script);
+      }
+
+      File events = new File(scripts, "_Events.groovy");
+      if (events.isFile() && CLEAN_HOOK.matcher(FileUtils.readFileToString(events, "UTF-8")).find())
+        return events;
+    }
+
+    return null;
+  }
+
+  /**
+   * Deletes everything there is to clean, in parallel.
+   *
+   * @return the number of directories and files deleted.
+   */
+  public int delete(int threads) throws IOException {
+    List<File> targets = new ArrayList<File>(directories);
+    targets.addAll(files);
+
+    File[] resolveReports = projectWorkDir.listFiles();
+    if (resolveReports != null) {
+      for (File resolveReport : resolveReports) {
+        if (resolveReport.isFile() && resolveReport.getName().endsWith(".resolve"))
+          targets.add(resolveReport);
+      }
+    }
+
+    if (testReportsDir != null) {
+      File[] reports = testReportsDir.listFiles();
+      if (reports != null) {
+        for (File report : reports) {
+          if (!report.getName().equals(TEST_SUITES_REPORT))
+            targets.add(report);
+        }
+      }
+    }
+
+    List<Callable<Boolean>> deletions = new ArrayList<Callable<Boolean>>();
+    for (final File target : targets) {
+      deletions.add(new Callable<Boolean>() {
+        public Boolean call() throws IOException {
+          if (target.isDirectory()) {
+            FileUtils.deleteDirectory(target);
+            return true;
+          }
+
+          if (!target.exists()) return false;
+
+          if (!target.delete())
+            throw new IOException("Unable to delete " + target);
+
+          return true;
+        }
+      });
+    }
+
+    if (deletions.isEmpty()) return 0;
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, deletions.size())));
+
+    try {
+      int deleted = 0;
+
+      for (Future<Boolean> deletion : executor.invokeAll(deletions)) {
+        if (deletion.get()) deleted++;
+      }
+
+      return deleted;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while cleaning", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+
+      throw new IOException("Unable to clean", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public void write(File recordFile) throws IOException {
+    recordFile.getAbsoluteFile().getParentFile().mkdirs();
+
+    File tempFile = new File(recordFile.getPath() + ".tmp");
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+
+    try {
+      writer.print(WORK_DIR + "\t" + projectWorkDir.getAbsolutePath() + "\n");
+
+      for (File directory : directories) {
+        writer.print(DIRECTORY + "\t" + directory.getPath() + "\n");
+      }
+
+      for (File file : files) {
+        writer.print(FILE + "\t" + file.getPath() + "\n");
+      }
+
+      if (testReportsDir != null)
+        writer.print(TEST_REPORTS + "\t" + testReportsDir.getPath() + "\n");
+
+      for (File pluginDirectory : pluginDirectories) {
+        writer.print(PLUGIN + "\t" + pluginDirectory.getPath() + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+
+    if (writer.checkError() || (recordFile.exists() && !recordFile.delete()) || !tempFile.renameTo(recordFile)) {
+      tempFile.delete();
+      throw new IOException("Unable to write " + recordFile);
+    }
+  }
+
+  /**
+   * @return what the last Grails run would have cleaned, or null if there is no record of one or it is unreadable.
+   */
+  public static CleanTargets read(File recordFile) throws IOException {
+    if (!recordFile.isFile()) return null;
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(recordFile), "UTF-8"));
+
+    try {
+      String line = reader.readLine();
+      if (line == null || !line.startsWith(WORK_DIR + "\t")) return null;
+
+      CleanTargets targets = new CleanTargets(new File(line.substring(WORK_DIR.length() + 1)));
+
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", 2);
+
+        if (fields.length != 2) return null;
+
+        File file = new File(fields[1]);
+
+        if (DIRECTORY.equals(fields[0])) targets.addDirectory(file);
+        else if (FILE.equals(fields[0])) targets.addFile(file);
+        else if (TEST_REPORTS.equals(fields[0])) targets.setTestReportsDir(file);
+        else if (PLUGIN.equals(fields[0])) targets.addPluginDirectory(file);
+        else return null;
+      }
+
+      return targets;
+    } finally {
+      reader.close();
+    }
+  }
+}
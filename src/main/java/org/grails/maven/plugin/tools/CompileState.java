@@ -0,0 +1,451 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * What the previous compile of a Grails project produced: a hash of every source file, which source each class
+ * in target/classes came from, which other classes each class refers to and the ABI fingerprint of each compile
+ * dependency, together with the classes of it that are referred to. Comparing it with the
+ * sources as they are now tells which class files are stale - those of changed or deleted sources and, transitively,
+ * of every class that refers to them. Deleting just those lets the (staleness based) Grails compile recompile only
+ * what is needed while the rest of target/classes is kept.
+ *
+ * It is stored as a tab separated text file, one record per line.
+ *
+ * @since 4.2
+ */
+public class CompileState {
+
+  private static final String FINGERPRINT = "fingerprint";
+  private static final String SOURCE = "source";
+  private static final String CLASS = "class";
+  private static final String ABI = "abi";
+  private static final String DEPENDENCY_CLASSES = "classes";
+
+  private static final String[] SOURCE_EXTENSIONS = {".groovy", ".java"};
+
+  /**
+   * The grails-app directories that do not hold compiled sources.
+   */
+  private static final Set<String> NON_SOURCE_DIRS = new HashSet<String>(Collections.singletonList("views"));
+
+  private String classpathFingerprint;
+
+  /**
+   * Source path, relative to the project directory, to its hash.
+   */
+  private final Map<String, String> sourceHashes = new TreeMap<String, String>();
+
+  /**
+   * Class, in internal form, to the source path it was compiled from.
+   */
+  private final Map<String, String> classSources = new TreeMap<String, String>();
+
+  /**
+   * Class to the other project classes, and the classes of dependencies, it refers to. The JDK is left out.
+   */
+  private final Map<String, Set<String>> classDependencies = new TreeMap<String, Set<String>>();
+
+  /**
+   * Compile dependency (groupId:artifactId:type:classifier) to the fingerprint of its ABI.
+   */
+  private final Map<String, String> abiFingerprints = new TreeMap<String, String>();
+
+  /**
+   * Compile dependency to those of its classes that project classes refer to. A new version of the dependency may
+   * no longer have them, and the classes referring to them must be recompiled all the same.
+   */
+  private final Map<String, Set<String>> dependencyClasses = new TreeMap<String, Set<String>>();
+
+  public String getClasspathFingerprint() {
+    return classpathFingerprint;
+  }
+
+  public Map<String, String> getSourceHashes() {
+    return sourceHashes;
+  }
+
+  public Map<String, String> getClassSources() {
+    return classSources;
+  }
+
+  public Map<String, String> getAbiFingerprints() {
+    return abiFingerprints;
+  }
+
+  public void setAbiFingerprints(Map<String, String> abiFingerprints) {
+    this.abiFingerprints.clear();
+    this.abiFingerprints.putAll(abiFingerprints);
+  }
+
+  public Map<String, Set<String>> getDependencyClasses() {
+    return dependencyClasses;
+  }
+
+  /**
+   * @param dependencyClasses compile dependency to all of its classes, as from
+   *                          {@link AbiFingerprints#classesIn(File)}. Only those the project refers to are kept.
+   */
+  public void setDependencyClasses(Map<String, Set<String>> dependencyClasses) {
+    Set<String> referenced = new HashSet<String>();
+    for (Set<String> dependencies : classDependencies.values()) {
+      referenced.addAll(dependencies);
+    }
+
+    this.dependencyClasses.clear();
+    for (Map.Entry<String, Set<String>> entry : dependencyClasses.entrySet()) {
+      Set<String> classes = new TreeSet<String>(entry.getValue());
+      classes.retainAll(referenced);
+      this.dependencyClasses.put(entry.getKey(), classes);
+    }
+  }
+
+  /**
+   * The directories Grails compiles from: every directory in grails-app apart from views, src/groovy and src/java.
+   */
+  public static List<File> sourceRoots(File basedir) {
+    List<File> roots = new ArrayList<File>();
+    File[] appDirs = new File(basedir, "grails-app").listFiles();
+
+    if (appDirs != null) {
+      for (File appDir : appDirs) {
+        if (appDir.isDirectory() && !NON_SOURCE_DIRS.contains(appDir.getName()))
+          roots.add(appDir);
+      }
+    }
+
+    roots.add(new File(basedir, "src/groovy"));
+    roots.add(new File(basedir, "src/java"));
+
+    Collections.sort(roots);
+
+    return roots;
+  }
+
+  /**
+   * Hashes every source file below the source roots.
+   *
+   * @return project relative source path to hash.
+   */
+  public static Map<String, String> hashSources(File basedir, List<File> sourceRoots) throws IOException {
+    Map<String, String> hashes = new TreeMap<String, String>();
+
+    for (File root : sourceRoots) {
+      hashSources(basedir, root, hashes);
+    }
+
+    return hashes;
+  }
+
+  private static void hashSources(File basedir, File dir, Map<String, String> hashes) throws IOException {
+    File[] files = dir.listFiles();
+
+    if (files == null) return;
+
+    for (File file : files) {
+      if (file.isDirectory()) {
+        hashSources(basedir, file, hashes);
+      } else if (isSource(file.getName())) {
+        hashes.put(relativePath(basedir, file), Fingerprints.of(file));
+      }
+    }
+  }
+
+  /**
+   * Records what a compile has just produced.
+   *
+   * @param basedir              the project directory.
+   * @param sourceRoots          as from {@link #sourceRoots(File)}.
+   * @param sourceHashes         the hashes of the sources that were compiled.
+   * @param classesDir           the compile output.
+   * @param classpathFingerprint the fingerprint of the compile classpath.
+   */
+  public static CompileState scan(File basedir, List<File> sourceRoots, Map<String, String> sourceHashes, File classesDir,
+                                  String classpathFingerprint) throws IOException {
+    CompileState state = new CompileState();
+    state.classpathFingerprint = classpathFingerprint;
+    state.sourceHashes.putAll(sourceHashes);
+
+    // com/acme/Book.groovy -> grails-app/domain/com/acme/Book.groovy
+    Map<String, String> sourcesByPackagePath = new HashMap<String, String>();
+    for (File root : sourceRoots) {
+      String prefix = relativePath(basedir, root) + "/";
+      for (String source : sourceHashes.keySet()) {
+        if (source.startsWith(prefix) && !sourcesByPackagePath.containsKey(source.substring(prefix.length())))
+          sourcesByPackagePath.put(source.substring(prefix.length()), source);
+      }
+    }
+
+    Map<String, Set<String>> references = new HashMap<String, Set<String>>();
+    List<File> classFiles = new ArrayList<File>();
+    findClassFiles(classesDir, classFiles);
+
+    for (File classFile : classFiles) {
+      ClassFileReader reader;
+      InputStream in = new FileInputStream(classFile);
+      try {
+        reader = ClassFileReader.read(in);
+      } finally {
+        in.close();
+      }
+
+      String className = reader.getClassName();
+      String packagePath = className.lastIndexOf('/') < 0 ? "" : className.substring(0, className.lastIndexOf('/') + 1);
+      String source = null;
+
+      if (reader.getSourceFile() != null) {
+        source = sourcesByPackagePath.get(packagePath + reader.getSourceFile());
+      } else {
+        String topLevel = className.indexOf('$') < 0 ? className : className.substring(0, className.indexOf('$'));
+        for (String extension : SOURCE_EXTENSIONS) {
+          if (source == null)
+            source = sourcesByPackagePath.get(topLevel + extension);
+        }
+      }
+
+      // classes that do not come from a project source (e.g. copied in by a plugin) are left alone
+      if (source != null) {
+        state.classSources.put(className, source);
+        references.put(className, reader.getReferencedClasses());
+      }
+    }
+
+    for (Map.Entry<String, Set<String>> entry : references.entrySet()) {
+      Set<String> dependencies = new TreeSet<String>();
+
+      for (String referenced : entry.getValue()) {
+        if (state.classSources.containsKey(referenced) || !referenced.startsWith("java/"))
+          dependencies.add(referenced);
+      }
+
+      state.classDependencies.put(entry.getKey(), dependencies);
+    }
+
+    return state;
+  }
+
+  /**
+   * Works out which classes of the previous compile are out of date: all classes of sources that have changed or
+   * gone, everything that refers to them, directly or not, and all other classes of the sources those are in.
+   *
+   * @param currentSourceHashes the sources as they are now, from {@link #hashSources(File, List)}.
+   * @return the stale classes, in internal form.
+   */
+  public Set<String> staleClasses(Map<String, String> currentSourceHashes) {
+    Set<String> changedSources = new HashSet<String>();
+
+    for (Map.Entry<String, String> source : sourceHashes.entrySet()) {
+      if (!source.getValue().equals(currentSourceHashes.get(source.getKey())))
+        changedSources.add(source.getKey());
+    }
+
+    return dependentClasses(classesOf(changedSources));
+  }
+
+  /**
+   * @param classes project classes, or classes of a dependency.
+   * @return the project classes among the given ones together with every project class that depends on them,
+   * directly or not, and the other classes of the sources those are in.
+   */
+  public Set<String> dependentClasses(Set<String> classes) {
+    Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+
+    for (Map.Entry<String, Set<String>> entry : classDependencies.entrySet()) {
+      for (String dependency : entry.getValue()) {
+        Set<String> users = dependents.get(dependency);
+        if (users == null) {
+          users = new HashSet<String>();
+          dependents.put(dependency, users);
+        }
+        users.add(entry.getKey());
+      }
+    }
+
+    Set<String> stale = new TreeSet<String>();
+    LinkedList<String> queue = new LinkedList<String>(classes);
+
+    while (!queue.isEmpty()) {
+      String className = queue.removeFirst();
+
+      if (!stale.add(className)) continue;
+
+      Set<String> users = dependents.get(className);
+      if (users != null)
+        queue.addAll(users);
+
+      // a source is always compiled as a whole, so its other classes are stale too
+      String source = classSources.get(className);
+      if (source != null)
+        queue.addAll(classesOf(Collections.singleton(source)));
+    }
+
+    stale.retainAll(classSources.keySet());
+
+    return stale;
+  }
+
+  private Set<String> classesOf(Set<String> sources) {
+    Set<String> classes = new TreeSet<String>();
+
+    for (Map.Entry<String, String> entry : classSources.entrySet()) {
+      if (sources.contains(entry.getValue()))
+        classes.add(entry.getKey());
+    }
+
+    return classes;
+  }
+
+  /**
+   * @return the state as last saved, or null if there is none or it cannot be read.
+   */
+  public static CompileState load(File stateFile) {
+    if (!stateFile.isFile()) return null;
+
+    CompileState state = new CompileState();
+
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(stateFile), "UTF-8"));
+      try {
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+          String[] fields = line.split("\t");
+
+          if (FINGERPRINT.equals(fields[0])) {
+            state.classpathFingerprint = fields[1];
+          } else if (ABI.equals(fields[0])) {
+            state.abiFingerprints.put(fields[2], fields[1]);
+          } else if (DEPENDENCY_CLASSES.equals(fields[0])) {
+            Set<String> classes = new TreeSet<String>();
+            for (int i = 2; i < fields.length; i++) {
+              classes.add(fields[i]);
+            }
+            state.dependencyClasses.put(fields[1], classes);
+          } else if (SOURCE.equals(fields[0])) {
+            state.sourceHashes.put(fields[2], fields[1]);
+          } else if (CLASS.equals(fields[0])) {
+            state.classSources.put(fields[1], fields[2]);
+
+            Set<String> dependencies = new TreeSet<String>();
+            for (int i = 3; i < fields.length; i++) {
+              dependencies.add(fields[i]);
+            }
+            state.classDependencies.put(fields[1], dependencies);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (Exception e) {
+      return null;
+    }
+
+    return state.classpathFingerprint == null ? null : state;
+  }
+
+  public void save(File stateFile) throws IOException {
+    stateFile.getParentFile().mkdirs();
+
+    Writer out = new OutputStreamWriter(new FileOutputStream(stateFile), "UTF-8");
+    PrintWriter writer = new PrintWriter(out);
+
+    try {
+      writer.print(FINGERPRINT + "\t" + classpathFingerprint + "\n");
+
+      for (Map.Entry<String, String> abi : abiFingerprints.entrySet()) {
+        writer.print(ABI + "\t" + abi.getValue() + "\t" + abi.getKey() + "\n");
+      }
+
+      for (Map.Entry<String, Set<String>> entry : dependencyClasses.entrySet()) {
+        writer.print(DEPENDENCY_CLASSES + "\t" + entry.getKey());
+        for (String className : entry.getValue()) {
+          writer.print("\t" + className);
+        }
+        writer.print("\n");
+      }
+
+      for (Map.Entry<String, String> source : sourceHashes.entrySet()) {
+        writer.print(SOURCE + "\t" + source.getValue() + "\t" + source.getKey() + "\n");
+      }
+
+      for (Map.Entry<String, String> entry : classSources.entrySet()) {
+        writer.print(CLASS + "\t" + entry.getKey() + "\t" + entry.getValue());
+        for (String dependency : classDependencies.get(entry.getKey())) {
+          writer.print("\t" + dependency);
+        }
+        writer.print("\n");
+      }
+    } finally {
+      writer.close();
+    }
+
+    if (writer.checkError())
+      throw new IOException("Unable to write " + stateFile);
+  }
+
+  private static void findClassFiles(File dir, List<File> classFiles) {
+    File[] files = dir.listFiles();
+
+    if (files == null) return;
+
+    for (File file : files) {
+      if (file.isDirectory())
+        findClassFiles(file, classFiles);
+      else if (file.getName().endsWith(".class"))
+        classFiles.add(file);
+    }
+  }
+
+  private static boolean isSource(String fileName) {
+    for (String extension : SOURCE_EXTENSIONS) {
+      if (fileName.endsWith(extension))
+        return true;
+    }
+
+    return false;
+  }
+
+  private static String relativePath(File basedir, File file) {
+    String base = basedir.getAbsolutePath();
+    String path = file.getAbsolutePath();
+
+    if (path.startsWith(base + File.separator))
+      path = path.substring(base.length() + 1);
+
+    return path.replace(File.separatorChar, '/');
+  }
+}
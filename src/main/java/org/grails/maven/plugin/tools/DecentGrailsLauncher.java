@@ -3,11 +3,28 @@ package org.grails.maven.plugin.tools;
 
 import java.io.File;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DecentGrailsLauncher {
 
+  /**
+   * The targets Grails 2.3 and later can fork, by the grails.project.fork setting that decides whether they are.
+   */
+  private static final Map<String, String> FORKABLE_TARGETS = new HashMap<String, String>();
+
+  static {
+    FORKABLE_TARGETS.put("testapp", "test");
+    FORKABLE_TARGETS.put("runapp", "run");
+    FORKABLE_TARGETS.put("runwar", "war");
+    FORKABLE_TARGETS.put("console", "console");
+  }
+
   private ClassLoader classLoader;
   private Object settings;
 
@@ -276,6 +293,60 @@ public class DecentGrailsLauncher {
     invokeMethod(settings, "setRuntimeDependencies", new Class[] { List.class }, new Object[] { dependencies });
   }
 
+  /**
+   * Registers an unpacked plugin with the build settings, as if it had been
+   * declared as an inline plugin.
+   * @param pluginDir The directory the plugin has been unpacked into.
+   */
+  public void addPluginDirectory(File pluginDir) {
+    invokeMethod(settings, "addPluginDirectory", new Class[] { File.class, boolean.class }, new Object[] { pluginDir, true });
+  }
+
+  /**
+   * Stops Grails from bringing in its default plugin set and from resolving
+   * dependencies itself - Maven has already done that for us.
+   */
+  public void disableDefaultPlugins() {
+    try {
+      Field f = settings.getClass().getDeclaredField("defaultPluginSet");
+      f.setAccessible(true);
+      f.set(settings, new HashSet());
+      f = settings.getClass().getDeclaredField("defaultPluginMap");
+      f.setAccessible(true);
+      f.set(settings, new LinkedHashMap());
+      f = settings.getClass().getDeclaredField("enableResolve");
+      f.setAccessible(true);
+      f.set(settings, false);
+    }
+    catch (Exception ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * Whether grails.project.fork has Grails run a target in a JVM of its own, rather than in the one loaded with
+   * the class loader given to this launcher. Only known once the target has been launched, when BuildConfig.groovy
+   * has been read.
+   * @param target The Grails target, e.g. TestApp.
+   */
+  @SuppressWarnings("rawtypes")
+  public boolean isForked(String target) {
+    String forkSetting = FORKABLE_TARGETS.get(target.toLowerCase());
+    if (forkSetting == null) return false;
+
+    Object forkSettings;
+    try {
+      forkSettings = settings.getClass().getMethod("getForkSettings").invoke(settings);
+    }
+    catch (Exception ex) {
+      return false; // older than Grails 2.3, which never forks
+    }
+
+    Object fork = forkSettings instanceof Map ? ((Map) forkSettings).get(forkSetting) : null;
+
+    return fork != null && !Boolean.FALSE.equals(fork);
+  }
+
   private Object createScriptRunner() throws Exception {
     return classLoader.loadClass("org.codehaus.groovy.grails.cli.GrailsScriptRunner").
       getDeclaredConstructor(new Class[] { settings.getClass() }).
@@ -24,6 +24,7 @@ import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Date;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.maven.model.Plugin;
@@ -235,6 +236,12 @@ public class DefaultGrailsServices extends AbstractLogEnabled implements GrailsS
     }
 
     pluginProject.setVersion(version);
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> properties = info.getProperties();
+    if (properties != null)
+      pluginProject.setProperties(properties);
+
     return pluginProject;
   }
 }
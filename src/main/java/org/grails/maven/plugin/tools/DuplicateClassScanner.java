@@ -0,0 +1,223 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Finds classes that are in more than one jar or directory of a classpath. Only the central directories of the
+ * jars are read, with {@link ZipReader}, and several jars are read at once, so a classpath of a few hundred jars
+ * takes well under a second. The CRCs of the central directory tell copies of the same class file apart from different
+ * classes that happen to have the same name.
+ *
+ * @since 4.2
+ */
+public class DuplicateClassScanner {
+
+  private final int threads;
+
+  /**
+   * @param threads how many jars to read at once, 0 for one per processor.
+   */
+  public DuplicateClassScanner(int threads) {
+    this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * @param classpath jars and directories, in classpath order.
+   * @return the duplicated classes by class name, with the classpath entries holding them in classpath order.
+   */
+  public Map<String, Duplicate> scan(List<File> classpath) throws IOException {
+    // an entry listed twice does not duplicate anything
+    classpath = new ArrayList<File>(new LinkedHashSet<File>(classpath));
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Map<String, Long>>> results = new ArrayList<Future<Map<String, Long>>>();
+
+    try {
+      for (final File file : classpath) {
+        results.add(executor.submit(new Callable<Map<String, Long>>() {
+          public Map<String, Long> call() throws IOException {
+            return file.isDirectory() ? classesInDirectory(file) : classesInJar(file);
+          }
+        }));
+      }
+
+      Map<String, Duplicate> classes = new HashMap<String, Duplicate>();
+      Map<String, Duplicate> duplicates = new TreeMap<String, Duplicate>();
+
+      for (int i = 0; i < classpath.size(); i++) {
+        for (Map.Entry<String, Long> entry : results.get(i).get().entrySet()) {
+          Duplicate duplicate = classes.get(entry.getKey());
+
+          if (duplicate == null) {
+            classes.put(entry.getKey(), new Duplicate(entry.getKey(), classpath.get(i), entry.getValue()));
+          } else {
+            duplicate.add(classpath.get(i), entry.getValue());
+            duplicates.put(entry.getKey(), duplicate);
+          }
+        }
+      }
+
+      return duplicates;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scanning the classpath", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException("Unable to scan the classpath", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Groups duplicates by the classpath entries that hold them, which is how they are best reported: usually two
+   * jars have a whole package in common rather than a class here and there.
+   */
+  public static Map<List<File>, List<Duplicate>> byOwners(Map<String, Duplicate> duplicates) {
+    Map<List<File>, List<Duplicate>> groups = new LinkedHashMap<List<File>, List<Duplicate>>();
+
+    for (Duplicate duplicate : duplicates.values()) {
+      List<Duplicate> group = groups.get(duplicate.getOwners());
+
+      if (group == null) {
+        group = new ArrayList<Duplicate>();
+        groups.put(duplicate.getOwners(), group);
+      }
+
+      group.add(duplicate);
+    }
+
+    return groups;
+  }
+
+  private static Map<String, Long> classesInJar(File jar) throws IOException {
+    Map<String, Long> classes = new HashMap<String, Long>();
+
+    if (!jar.isFile()) return classes;
+
+    ZipReader zip = new ZipReader(jar);
+    try {
+      for (ZipReader.Entry entry : zip.getEntries().values()) {
+        addClass(classes, entry.name, entry.crc);
+      }
+    } finally {
+      zip.close();
+    }
+
+    return classes;
+  }
+
+  private static Map<String, Long> classesInDirectory(File dir) throws IOException {
+    Map<String, Long> classes = new HashMap<String, Long>();
+    addClasses(dir, "", classes);
+    return classes;
+  }
+
+  private static void addClasses(File dir, String prefix, Map<String, Long> classes) throws IOException {
+    File[] files = dir.listFiles();
+
+    if (files == null) return;
+
+    for (File file : files) {
+      if (file.isDirectory())
+        addClasses(file, prefix + file.getName() + "/", classes);
+      else if (file.getName().endsWith(".class"))
+        addClass(classes, prefix + file.getName(), crcOf(file));
+    }
+  }
+
+  private static void addClass(Map<String, Long> classes, String path, long crc) {
+    // META-INF holds multi-release variants and the like, module-info is in every modular jar
+    if (!path.endsWith(".class") || path.startsWith("META-INF/") || path.endsWith("module-info.class"))
+      return;
+
+    classes.put(path.substring(0, path.length() - ".class".length()).replace('/', '.'), crc);
+  }
+
+  private static long crcOf(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    InputStream in = new FileInputStream(file);
+
+    try {
+      byte[] buffer = new byte[8192];
+      int read;
+
+      while ((read = in.read(buffer)) >= 0) {
+        crc.update(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+
+    return crc.getValue();
+  }
+
+  /**
+   * A class found in more than one classpath entry.
+   */
+  public static class Duplicate {
+    private final String className;
+    private final List<File> owners = new ArrayList<File>(2);
+    private final long firstCrc;
+    private boolean identical = true;
+
+    Duplicate(String className, File owner, long crc) {
+      this.className = className;
+      this.owners.add(owner);
+      this.firstCrc = crc;
+    }
+
+    void add(File owner, long crc) {
+      owners.add(owner);
+      identical &= crc == firstCrc;
+    }
+
+    public String getClassName() {
+      return className;
+    }
+
+    /**
+     * @return the classpath entries with the class, the first one is where it is loaded from.
+     */
+    public List<File> getOwners() {
+      return owners;
+    }
+
+    /**
+     * @return true if all copies of the class file are the same, so which one is loaded does not matter.
+     */
+    public boolean isIdentical() {
+      return identical;
+    }
+  }
+}
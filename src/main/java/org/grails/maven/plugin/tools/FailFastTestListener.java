@@ -0,0 +1,54 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import grails.build.GrailsBuildListener;
+
+/**
+ * A Grails build listener that stops the test run once the first test class with a failure has finished.
+ *
+ * Grails instantiates it by name from the grails.build.listeners system property, so it is loaded by the
+ * RootLoader (the plugin jar is put on the Grails classpath for this) and not by the Maven plugin realm.
+ * JUnit swallows exceptions thrown by its listeners, so the run is aborted with an Error instead; the name of
+ * the failing class is left in a system property so the mojo can report something more useful than a stack trace.
+ *
+ * @since 4.2
+ */
+public class FailFastTestListener implements GrailsBuildListener {
+
+  public static final String BUILD_LISTENERS = "grails.build.listeners";
+  public static final String ABORTED_AT = "grails.test.failFast.abortedAt";
+
+  private boolean failed;
+
+  public void receiveGrailsBuildEvent(String name, Object... args) {
+    if ("TestFailure".equals(name)) {
+      failed = true;
+    } else if ("TestCaseEnd".equals(name) && failed) {
+      String testCase = args != null && args.length > 0 ? String.valueOf(args[0]) : "unknown";
+
+      System.setProperty(ABORTED_AT, testCase);
+
+      throw new TestRunAbortedError(testCase);
+    }
+  }
+
+  public static class TestRunAbortedError extends Error {
+    public TestRunAbortedError(String testCase) {
+      super("Fail fast: aborting the test run after failures in " + testCase);
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.grails.launcher.RootLoader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs a single Grails target in a JVM of its own. The mojo resolves everything up front and writes it into
+ * a properties file, this class reads that back, configures the build settings the same way the mojo does
+ * when running in process and exits with whatever Grails returned.
+ *
+ * It must only depend on the JDK, the Grails launcher and {@link DecentGrailsLauncher} as that is all the
+ * forked JVM has on its system classpath.
+ *
+ * @since 4.2
+ */
+public class ForkedGrailsLauncher {
+
+  public static final String CLASSPATH = "classpath";
+  public static final String GRAILS_HOME = "grails.home";
+  public static final String BASEDIR = "basedir";
+  public static final String TARGET = "target";
+  public static final String ARGS = "args";
+  public static final String ENV = "env";
+
+  public static final String COMPILE_DEPENDENCIES = "dependencies.compile";
+  public static final String RUNTIME_DEPENDENCIES = "dependencies.runtime";
+  public static final String TEST_DEPENDENCIES = "dependencies.test";
+  public static final String BUILD_DEPENDENCIES = "dependencies.build";
+
+  public static final String PROJECT_WORK_DIR = "dir.projectWork";
+  public static final String CLASSES_DIR = "dir.classes";
+  public static final String TEST_CLASSES_DIR = "dir.testClasses";
+  public static final String RESOURCES_DIR = "dir.resources";
+  public static final String PROJECT_PLUGINS_DIR = "dir.projectPlugins";
+  public static final String TEST_REPORTS_DIR = "dir.testReports";
+  public static final String CLASSLOADER_INDEX_DIR = "dir.classLoaderIndex";
+  public static final String CLASSPATH_USAGE_FILE = "classpathUsage";
+
+  public static final String PLUGIN_DIRECTORIES = "plugins";
+
+  /**
+   * Any key starting with this is set as a system property (minus the prefix) before Grails is loaded.
+   */
+  public static final String SYSTEM_PROPERTY_PREFIX = "system.";
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.err.println("usage: ForkedGrailsLauncher <configuration.properties>");
+      System.exit(2);
+    }
+
+    Properties config = new Properties();
+    InputStream in = new FileInputStream(args[0]);
+    try {
+      config.load(in);
+    } finally {
+      in.close();
+    }
+
+    System.exit(launch(config));
+  }
+
+  public static int launch(Properties config) throws IOException {
+    for (String key : config.stringPropertyNames()) {
+      if (key.startsWith(SYSTEM_PROPERTY_PREFIX)) {
+        System.setProperty(key.substring(SYSTEM_PROPERTY_PREFIX.length()), config.getProperty(key));
+      }
+    }
+
+    String env = config.getProperty(ENV);
+    if (env == null)
+      System.clearProperty("grails.env");
+    else
+      System.setProperty("grails.env", env);
+
+    URL[] classpath = toUrls(config.getProperty(CLASSPATH));
+    String indexDir = config.getProperty(CLASSLOADER_INDEX_DIR);
+    RootLoader rootLoader = indexDir != null ? IndexedRootLoader.create(classpath, new File(indexDir)) : new RootLoader(classpath);
+
+    // see if log4j is there and if so, initialize it
+    try {
+      Class<?> cls = rootLoader.loadClass("org.springframework.util.Log4jConfigurer");
+      cls.getMethod("initLogging", String.class).invoke(cls, "classpath:grails-maven/log4j.properties");
+    } catch (Exception ex) {
+      // no log4j, good!
+    }
+
+    DecentGrailsLauncher launcher = new DecentGrailsLauncher(rootLoader, config.getProperty(GRAILS_HOME), config.getProperty(BASEDIR));
+    launcher.setPlainOutput(true);
+    launcher.setDependenciesExternallyConfigured(true);
+
+    launcher.setCompileDependencies(toFiles(config.getProperty(COMPILE_DEPENDENCIES)));
+    launcher.setRuntimeDependencies(toFiles(config.getProperty(RUNTIME_DEPENDENCIES)));
+    launcher.setTestDependencies(toFiles(config.getProperty(TEST_DEPENDENCIES)));
+    launcher.setBuildDependencies(toFiles(config.getProperty(BUILD_DEPENDENCIES)));
+
+    launcher.setProjectWorkDir(new File(config.getProperty(PROJECT_WORK_DIR)));
+    launcher.setClassesDir(new File(config.getProperty(CLASSES_DIR)));
+    launcher.setTestClassesDir(new File(config.getProperty(TEST_CLASSES_DIR)));
+    launcher.setResourcesDir(new File(config.getProperty(RESOURCES_DIR)));
+    launcher.setProjectPluginsDir(new File(config.getProperty(PROJECT_PLUGINS_DIR)));
+
+    if (config.getProperty(TEST_REPORTS_DIR) != null) {
+      launcher.setTestReportsDir(new File(config.getProperty(TEST_REPORTS_DIR)));
+    }
+
+    launcher.disableDefaultPlugins();
+
+    for (File pluginDir : toFiles(config.getProperty(PLUGIN_DIRECTORIES))) {
+      launcher.addPluginDirectory(pluginDir);
+    }
+
+    int result = launcher.launch(config.getProperty(TARGET), config.getProperty(ARGS), env);
+
+    if (config.getProperty(CLASSPATH_USAGE_FILE) != null && rootLoader instanceof IndexedRootLoader) {
+      if (launcher.isForked(config.getProperty(TARGET)))
+        System.err.println("[WARNING] " + ClasspathUsageReport.forkedTargetMessage(config.getProperty(TARGET)));
+      else
+        writeFiles(new File(config.getProperty(CLASSPATH_USAGE_FILE)), ((IndexedRootLoader) rootLoader).getUsedFiles());
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes one path per line, as read by {@link #readFiles(File)}.
+   */
+  public static void writeFiles(File file, List<File> files) throws IOException {
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      for (File f : files) {
+        writer.print(f.getAbsolutePath() + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+
+    if (writer.checkError())
+      throw new IOException("Unable to write " + file);
+  }
+
+  public static List<File> readFiles(File file) throws IOException {
+    List<File> files = new ArrayList<File>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.length() > 0)
+          files.add(new File(line));
+      }
+    } finally {
+      reader.close();
+    }
+
+    return files;
+  }
+
+  private static List<File> toFiles(String paths) {
+    List<File> files = new ArrayList<File>();
+
+    if (paths != null) {
+      for (String path : paths.split(File.pathSeparator)) {
+        if (path.length() > 0) {
+          files.add(new File(path));
+        }
+      }
+    }
+
+    return files;
+  }
+
+  private static URL[] toUrls(String paths) throws MalformedURLException {
+    List<URL> urls = new ArrayList<URL>();
+
+    for (File file : toFiles(paths)) {
+      urls.add(file.toURI().toURL());
+    }
+
+    return urls.toArray(new URL[urls.size()]);
+  }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactCollector;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.artifact.MavenMetadataSource;
+import org.apache.maven.shared.dependency.tree.DependencyNode;
+import org.apache.maven.shared.dependency.tree.DependencyTreeBuilder;
+import org.apache.maven.shared.dependency.tree.DependencyTreeBuilderException;
+import org.apache.maven.shared.dependency.tree.traversal.DependencyNodeVisitor;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.repository.RemoteRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Resolves the dependencies of a Grails project the way the mojos are configured to: transitively with the legacy
+ * dependency tree or the repository system (see run.resolver), or only the declared dependencies, replaying the
+ * local repository record when run.preferLocalRepository is set. The artifacts come back resolved, in dependency
+ * tree order, without the project itself.
+ *
+ * Resolutions started ahead of time, by {@link GrailsResolutionWarmer}, are handed over with
+ * {@link #takeWarmedResolution(String)} under the key {@link #getWarmUpKey(MavenProject)} gives.
+ *
+ * @since 4.2
+ */
+public class GrailsDependencyResolver {
+
+  private static final ConcurrentMap<String, Future<Set<Artifact>>> warmedResolutions = new ConcurrentHashMap<String, Future<Set<Artifact>>>();
+
+  private final ArtifactResolver artifactResolver;
+  private final ArtifactFactory artifactFactory;
+  private final ArtifactMetadataSource artifactMetadataSource;
+  private final ArtifactCollector artifactCollector;
+  private final DependencyTreeBuilder dependencyTreeBuilder;
+  private final ArtifactRepository localRepository;
+  private final List<ArtifactRepository> remoteRepositories;
+  private final Log log;
+
+  private RepositorySystem repositorySystem;
+  private RepositorySystemSession repositorySystemSession;
+  private List<RemoteRepository> remoteProjectRepositories;
+  private SessionCache sessionCache;
+
+  private boolean useTransitives = true;
+  private boolean preferLocalRepository;
+  private int threads = 1;
+  private String resolver = "legacy";
+
+  public GrailsDependencyResolver(ArtifactResolver artifactResolver, ArtifactFactory artifactFactory, ArtifactMetadataSource artifactMetadataSource,
+                                  ArtifactCollector artifactCollector, DependencyTreeBuilder dependencyTreeBuilder,
+                                  ArtifactRepository localRepository, List<ArtifactRepository> remoteRepositories, Log log) {
+    this.artifactResolver = artifactResolver;
+    this.artifactFactory = artifactFactory;
+    this.artifactMetadataSource = artifactMetadataSource;
+    this.artifactCollector = artifactCollector;
+    this.dependencyTreeBuilder = dependencyTreeBuilder;
+    this.localRepository = localRepository;
+    this.remoteRepositories = remoteRepositories;
+    this.log = log;
+  }
+
+  /**
+   * The repository system the "aether" and "compare" resolvers use.
+   */
+  public void setRepositorySystem(RepositorySystem repositorySystem, RepositorySystemSession session, List<RemoteRepository> remoteProjectRepositories) {
+    this.repositorySystem = repositorySystem;
+    this.repositorySystemSession = session;
+    this.remoteProjectRepositories = remoteProjectRepositories;
+  }
+
+  /**
+   * The cache dependency metadata is shared through, none by default.
+   */
+  public void setSessionCache(SessionCache sessionCache) {
+    this.sessionCache = sessionCache;
+  }
+
+  public void setUseTransitives(boolean useTransitives) {
+    this.useTransitives = useTransitives;
+  }
+
+  public void setPreferLocalRepository(boolean preferLocalRepository) {
+    this.preferLocalRepository = preferLocalRepository;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  public void setResolver(String resolver) {
+    this.resolver = resolver;
+  }
+
+  /**
+   * @return what a resolution of the project depends on besides its dependencies: a resolution warmed up under a
+   *         different key does not match the configuration it would be used with.
+   */
+  public String getWarmUpKey(MavenProject project) {
+    return project.getId() + "|" + useTransitives + "|" + resolver + "|" + localRepository.getBasedir();
+  }
+
+  public static void putWarmedResolution(String key, Future<Set<Artifact>> resolution) {
+    warmedResolutions.put(key, resolution);
+  }
+
+  /**
+   * @return the resolution started ahead of time under the key, if any; it is only handed out once.
+   */
+  public static Future<Set<Artifact>> takeWarmedResolution(String key) {
+    return warmedResolutions.remove(key);
+  }
+
+  public static void clearWarmedResolutions() {
+    for (Future<Set<Artifact>> resolution : warmedResolutions.values()) {
+      resolution.cancel(true);
+    }
+
+    warmedResolutions.clear();
+  }
+
+  public Set<Artifact> resolve(MavenProject project) throws MojoExecutionException {
+    Set<Artifact> artifacts = preferLocalRepository ? readLocalRepositoryManifest(project) : null;
+
+    if (artifacts == null) {
+      artifacts = useTransitives ? resolveTransitives(project) : resolveDependencies(project, project.getDependencies(), false);
+
+      if (preferLocalRepository)
+        writeLocalRepositoryManifest(project, artifacts);
+    }
+
+    return artifacts;
+  }
+
+  public Set<Artifact> resolveDependencies(MavenProject project, List<Dependency> unresolvedDependencies, boolean resolveTransitively) throws MojoExecutionException {
+    final Set<Artifact> resolvedArtifacts = new LinkedHashSet<Artifact>();
+
+    /*
+    * Resolve each artifact.  This will get all transitive artifacts AND eliminate conflicts.
+    */
+    final Set<Artifact> unresolvedArtifacts;
+
+    try {
+      unresolvedArtifacts = MavenMetadataSource.createArtifacts(this.artifactFactory, unresolvedDependencies, null, null, null);
+
+      if (resolveTransitively) {
+        ArtifactResolutionResult artifacts = artifactResolver.resolveTransitively(unresolvedArtifacts, project.getArtifact(),
+            remoteRepositories, localRepository, artifactMetadataSource);
+        resolvedArtifacts.addAll(artifacts.getArtifacts());
+      } else {
+        // resolve each artifact individually
+        for( Artifact artifact : unresolvedArtifacts ) {
+          artifactResolver.resolve(artifact, repositoriesFor(artifact), localRepository);
+
+          resolvedArtifacts.add(artifact);
+        }
+      }
+    } catch (Exception e) {
+      throw new MojoExecutionException("Unable to complete configuring the build settings", e);
+    }
+
+    for (Artifact artifact : resolvedArtifacts) {
+      System.out.println("matched " + artifact.toString());
+    }
+
+    return resolvedArtifacts;
+  }
+
+  private Set<Artifact> resolveTransitives(MavenProject project) throws MojoExecutionException {
+    if ("legacy".equals(resolver))
+      return resolveFromTree(project);
+
+    if ("aether".equals(resolver))
+      return resolveWithRepositorySystem(project);
+
+    if (!"compare".equals(resolver))
+      throw new MojoExecutionException("run.resolver must be legacy, aether or compare, not " + resolver);
+
+    long start = System.currentTimeMillis();
+    Set<Artifact> legacy = resolveFromTree(project);
+    long legacyTime = System.currentTimeMillis() - start;
+
+    start = System.currentTimeMillis();
+    Set<Artifact> aether = resolveWithRepositorySystem(project);
+    long aetherTime = System.currentTimeMillis() - start;
+
+    Set<String> legacyKeys = resolutionKeys(legacy);
+    Set<String> aetherKeys = resolutionKeys(aether);
+
+    log.info("Resolver comparison: legacy " + legacy.size() + " artifacts in " + legacyTime + "ms, aether " + aether.size() +
+      " artifacts in " + aetherTime + "ms");
+
+    for (String key : legacyKeys) {
+      if (!aetherKeys.contains(key)) log.warn("Resolved by legacy only: " + key);
+    }
+    for (String key : aetherKeys) {
+      if (!legacyKeys.contains(key)) log.warn("Resolved by aether only: " + key);
+    }
+
+    if (legacyKeys.equals(aetherKeys))
+      log.info("Both resolvers agree on every artifact and scope");
+
+    return legacy;
+  }
+
+  private Set<Artifact> resolveWithRepositorySystem(MavenProject project) throws MojoExecutionException {
+    try {
+      return new AetherDependencyCollector(repositorySystem, repositorySystemSession, remoteProjectRepositories, artifactFactory,
+        threads).collect(project);
+    } catch (DependencyCollectionException e) {
+      throw new MojoExecutionException("Unable to collect the dependencies of " + project.getId(), e);
+    } catch (org.eclipse.aether.resolution.ArtifactResolutionException e) {
+      throw new MojoExecutionException("Unable to resolve the dependencies of " + project.getId(), e);
+    }
+  }
+
+  /**
+   * @return groupId:artifactId:type:classifier:version:scope of each artifact, in order.
+   */
+  private static Set<String> resolutionKeys(Set<Artifact> artifacts) {
+    Set<String> keys = new LinkedHashSet<String>();
+
+    for (Artifact artifact : artifacts) {
+      keys.add(artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getType() + ":" +
+        (artifact.getClassifier() == null ? "" : artifact.getClassifier()) + ":" + artifact.getBaseVersion() + ":" + artifact.getScope());
+    }
+
+    return keys;
+  }
+
+  private Set<Artifact> resolveFromTree(final MavenProject project) {
+    final List<Artifact> treeArtifacts = new ArrayList<Artifact>();
+    ArtifactMetadataSource metadataSource = sessionCache == null ? artifactMetadataSource
+      : new CachingArtifactMetadataSource(artifactMetadataSource, sessionCache);
+
+    try {
+      // we have to do this because Aether does not work.
+      dependencyTreeBuilder.buildDependencyTree(project, localRepository, artifactFactory,
+        metadataSource, artifactCollector).getRootNode().accept(new DependencyNodeVisitor() {
+        @Override
+        public boolean visit(DependencyNode dependencyNode) {
+          Artifact artifact = dependencyNode.getArtifact();
+
+          if (dependencyNode.getState() != DependencyNode.INCLUDED)
+            return true;
+
+          if (artifact.getArtifactId().equals(project.getArtifactId()) && artifact.getGroupId().equals(project.getGroupId()))
+            return true;
+
+          treeArtifacts.add(artifact);
+          return true;
+        }
+
+        @Override
+        public boolean endVisit(DependencyNode dependencyNode) {
+          return true;
+        }
+      });
+    } catch (DependencyTreeBuilderException e) {
+      throw new RuntimeException(e);
+    }
+
+    resolveArtifacts(treeArtifacts);
+
+    return new LinkedHashSet<Artifact>(treeArtifacts);
+  }
+
+  /**
+   * Resolves the artifacts, threads at a time.
+   */
+  private void resolveArtifacts(List<Artifact> artifacts) {
+    if (threads <= 1) {
+      for (Artifact artifact : artifacts)
+        resolveArtifact(artifact);
+
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<?>> resolutions = new ArrayList<Future<?>>();
+
+    try {
+      for (final Artifact artifact : artifacts) {
+        resolutions.add(executor.submit(new Runnable() {
+          public void run() {
+            resolveArtifact(artifact);
+          }
+        }));
+      }
+
+      for (Future<?> resolution : resolutions)
+        resolution.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void resolveArtifact(Artifact artifact) {
+    try {
+      artifactResolver.resolve(artifact, repositoriesFor(artifact), localRepository);
+    } catch (ArtifactResolutionException e) {
+      throw new RuntimeException(e);
+    } catch (ArtifactNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return no remote repositories at all if run.preferLocalRepository is set and the artifact is already in the
+   *         local repository, so that not even SNAPSHOT metadata is checked.
+   */
+  private List<ArtifactRepository> repositoriesFor(Artifact artifact) {
+    if (preferLocalRepository && new File(localRepository.getBasedir(), localRepository.pathOf(artifact)).isFile())
+      return Collections.emptyList();
+
+    return remoteRepositories;
+  }
+
+  private static File getLocalRepositoryManifestFile(MavenProject project) {
+    return new File(project.getBuild().getDirectory(), "grails-local-repository.txt");
+  }
+
+  /**
+   * What a resolution depends on: the effective dependencies and dependency management of the project, whether
+   * transitives are used and the local repository.
+   */
+  private String getLocalRepositoryManifestKey(MavenProject project) {
+    MessageDigest digest = Fingerprints.newDigest();
+    Fingerprints.update(digest, project.getGroupId() + ":" + project.getArtifactId() + "|" + useTransitives + "|" + localRepository.getBasedir());
+
+    List<Dependency> dependencies = new ArrayList<Dependency>(project.getDependencies());
+    if (project.getDependencyManagement() != null) {
+      Fingerprints.update(digest, "managed");
+      dependencies.addAll(project.getDependencyManagement().getDependencies());
+    }
+
+    for (Dependency dependency : dependencies) {
+      StringBuilder exclusions = new StringBuilder();
+      for (Exclusion exclusion : dependency.getExclusions()) {
+        exclusions.append(exclusion.getGroupId()).append(':').append(exclusion.getArtifactId()).append(',');
+      }
+
+      Fingerprints.update(digest, dependency.getManagementKey() + ":" + dependency.getVersion() + ":" + dependency.getScope() + ":" +
+        dependency.isOptional() + ":" + exclusions);
+    }
+
+    return Fingerprints.hex(digest.digest());
+  }
+
+  /**
+   * @return the artifacts of the last resolution, or null if it has to be done again.
+   */
+  private Set<Artifact> readLocalRepositoryManifest(MavenProject project) {
+    File manifestFile = getLocalRepositoryManifestFile(project);
+    LocalRepositoryManifest manifest;
+
+    try {
+      manifest = LocalRepositoryManifest.read(manifestFile, getLocalRepositoryManifestKey(project));
+    } catch (IOException e) {
+      log.warn("Unable to read " + manifestFile + ", resolving dependencies: " + e.getMessage());
+      return null;
+    }
+
+    if (manifest == null) {
+      log.info("Dependencies have changed or are not all in the local repository, resolving them");
+      return null;
+    }
+
+    Set<Artifact> artifacts = new LinkedHashSet<Artifact>();
+
+    for (LocalRepositoryManifest.Entry entry : manifest.getEntries()) {
+      Artifact artifact = artifactFactory.createDependencyArtifact(entry.groupId, entry.artifactId,
+        VersionRange.createFromVersion(entry.version), entry.type, entry.classifier, entry.scope);
+      artifact.setFile(entry.file);
+      artifact.setResolved(true);
+      artifact.setDependencyTrail(entry.dependencyTrail);
+      artifacts.add(artifact);
+    }
+
+    log.info("Resolved " + artifacts.size() + " dependencies from the local repository");
+
+    return artifacts;
+  }
+
+  private void writeLocalRepositoryManifest(MavenProject project, Set<Artifact> artifacts) {
+    LocalRepositoryManifest manifest = new LocalRepositoryManifest();
+
+    for (Artifact artifact : artifacts) {
+      // nothing to replay if it is not all in the local repository
+      if (artifact.getFile() == null || !artifact.getFile().isFile()) return;
+
+      manifest.add(new LocalRepositoryManifest.Entry(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
+        artifact.getType(), artifact.getClassifier(), artifact.getScope(), artifact.getFile(), artifact.getDependencyTrail()));
+    }
+
+    File manifestFile = getLocalRepositoryManifestFile(project);
+
+    try {
+      manifest.write(manifestFile, getLocalRepositoryManifestKey(project));
+    } catch (IOException e) {
+      log.warn("Unable to write " + manifestFile + ": " + e.getMessage());
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package org.grails.maven.plugin.tools;
 
 import java.io.File;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:trygve.laugstol@arktekk.no">Trygve Laugst&oslash;l</a>
@@ -10,6 +12,7 @@ public class GrailsPluginProject {
   private String pluginName;
   private File fileName;
   private String version;
+  private Map<String, Object> properties = Collections.emptyMap();
 
   public String getPluginName() {
     return pluginName;
@@ -34,4 +37,16 @@ public class GrailsPluginProject {
   public void setVersion(String version) {
     this.version = version;
   }
+
+  /**
+   * @return the static properties of the plugin descriptor, e.g. title, author and pluginExcludes.
+   * @since 4.2
+   */
+  public Map<String, Object> getProperties() {
+    return properties;
+  }
+
+  public void setProperties(Map<String, Object> properties) {
+    this.properties = properties;
+  }
 }
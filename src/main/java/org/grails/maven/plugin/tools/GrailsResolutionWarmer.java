@@ -0,0 +1,254 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.maven.AbstractMavenLifecycleParticipant;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.resolver.ArtifactCollector;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.dependency.tree.DependencyTreeBuilder;
+import org.codehaus.plexus.component.annotations.Component;
+import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Starts resolving the dependencies of every Grails module, and extracting their plugins, on a background pool as
+ * soon as the build has read its projects, while Maven gets on with work that does not need them. The first Grails
+ * mojo of a module then takes the result over instead of resolving on the spot, see
+ * {@link GrailsDependencyResolver#takeWarmedResolution(String)}.
+ *
+ * Only in effect when the plugin is loaded as an extension, which the Grails packagings need anyway, with the
+ * legacy resolver, and when the build goes on to something that needs the Grails classpath: the compile phase or a
+ * later one, or a goal of this plugin other than the ones that resolve nothing. A clean or validate resolves
+ * nothing. Modules that depend on another module of the build are left to resolve when they are built, as the
+ * other module's artifact does not exist yet. -Drun.warmResolution=false turns it off.
+ *
+ * @since 4.2
+ */
+@Component(role = AbstractMavenLifecycleParticipant.class, hint = "grails-resolution-warmer")
+public class GrailsResolutionWarmer extends AbstractMavenLifecycleParticipant {
+
+  public static final String DEFAULT_CENTRAL_PLUGIN_INSTALL_DIR = "${user.home}/.grails/maven";
+
+  private static final List<String> GRAILS_PACKAGINGS = Arrays.asList("grails-app", "grails-plugin", "grails-plugin2");
+  private static final String PLUGIN_GROUP_ID = "com.bluetrainsoftware.bluegrails";
+  private static final String PLUGIN_ARTIFACT_ID = "grails-maven-plugin";
+  private static final String PLUGIN_PREFIX = "grails";
+
+  /**
+   * The phases of the default lifecycle from compile on, the ones by which a Grails module needs its classpath.
+   */
+  private static final List<String> CLASSPATH_PHASES = Arrays.asList("compile", "process-classes", "generate-test-sources",
+    "process-test-sources", "generate-test-resources", "process-test-resources", "test-compile", "process-test-classes", "test",
+    "prepare-package", "package", "pre-integration-test", "integration-test", "post-integration-test", "verify", "install", "deploy");
+
+  /**
+   * The goals of this plugin that do not need the Grails classpath, or resolve it their own way.
+   */
+  private static final List<String> NON_CLASSPATH_GOALS = Arrays.asList("clean", "maven-clean", "validate", "validate-plugin", "init",
+    "init-plugin", "prefetch", "merge-test-reports");
+
+  @Requirement
+  private ArtifactResolver artifactResolver;
+
+  @Requirement
+  private ArtifactFactory artifactFactory;
+
+  @Requirement
+  private ArtifactMetadataSource artifactMetadataSource;
+
+  @Requirement
+  private ArtifactCollector artifactCollector;
+
+  @Requirement
+  private DependencyTreeBuilder dependencyTreeBuilder;
+
+  @Requirement
+  private Logger logger;
+
+  private ExecutorService executor;
+
+  @Override
+  public void afterProjectsRead(MavenSession session) {
+    if (!needsGrailsClasspath(session.getGoals())) return;
+
+    Set<String> reactorProjects = new HashSet<String>();
+    for (MavenProject project : session.getProjects()) {
+      reactorProjects.add(project.getGroupId() + ":" + project.getArtifactId());
+    }
+
+    List<MavenProject> projects = new ArrayList<MavenProject>();
+    for (MavenProject project : session.getProjects()) {
+      if (GRAILS_PACKAGINGS.contains(project.getPackaging()) && !"false".equals(getSetting(session, project, "warmResolution", "run.warmResolution", "true"))
+        && "legacy".equals(getSetting(session, project, "resolver", "run.resolver", "legacy")) && !dependsOnAny(project, reactorProjects))
+        projects.add(project);
+    }
+
+    if (projects.isEmpty()) return;
+
+    logger.info("Resolving the dependencies of " + projects.size() + " Grails modules in the background");
+
+    // the threads are created here so that they inherit the session Maven's legacy components look up
+    executor = Executors.newFixedThreadPool(Math.min(projects.size(), Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "grails-resolution-warmer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    for (final MavenProject project : projects) {
+      final GrailsDependencyResolver resolver = newResolver(session, project);
+      final File centralPluginInstallDir = new File(getSetting(session, project, "centralPluginInstallDir", null, DEFAULT_CENTRAL_PLUGIN_INSTALL_DIR)
+        .replace("${user.home}", System.getProperty("user.home")));
+
+      Future<Set<Artifact>> resolution = executor.submit(new Callable<Set<Artifact>>() {
+        public Set<Artifact> call() throws Exception {
+          Set<Artifact> artifacts = resolver.resolve(project);
+
+          for (Artifact artifact : artifacts) {
+            if (PluginArchives.isPlugin(artifact))
+              extractPlugin(artifact, centralPluginInstallDir);
+          }
+
+          return artifacts;
+        }
+      });
+
+      GrailsDependencyResolver.putWarmedResolution(resolver.getWarmUpKey(project), resolution);
+    }
+
+    executor.shutdown();
+  }
+
+  // no @Override, Maven only calls it from 3.2.1 on
+  public void afterSessionEnd(MavenSession session) {
+    GrailsDependencyResolver.clearWarmedResolutions();
+
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  private GrailsDependencyResolver newResolver(MavenSession session, MavenProject project) {
+    Log log = new DefaultLog(logger);
+
+    GrailsDependencyResolver resolver = new GrailsDependencyResolver(artifactResolver, artifactFactory, artifactMetadataSource,
+      artifactCollector, dependencyTreeBuilder, session.getLocalRepository(), project.getRemoteArtifactRepositories(), log);
+
+    resolver.setSessionCache(SessionCache.forSession(session.getRequest(), Integer.parseInt(getSetting(session, project, "sessionCacheSize", "run.sessionCacheSize", "2000"))));
+    resolver.setUseTransitives(Boolean.parseBoolean(getSetting(session, project, "useTransitives", "run.useTransitives", "true")));
+    resolver.setPreferLocalRepository(Boolean.parseBoolean(getSetting(session, project, "preferLocalRepository", "run.preferLocalRepository", "false")));
+    resolver.setThreads(Integer.parseInt(getSetting(session, project, "resolverThreads", "run.resolverThreads", "1")));
+
+    return resolver;
+  }
+
+  /**
+   * Extracts the plugin into the central directory the way the mojos would, unless it is there already, it is a
+   * SNAPSHOT (the mojos extract those every time) or its location is overridden.
+   */
+  private void extractPlugin(Artifact plugin, File centralPluginInstallDir) throws Exception {
+    String override = System.getProperty(plugin.getGroupId() + ":" + plugin.getArtifactId());
+
+    if (plugin.isSnapshot() || (override != null && override.length() > 0)) return;
+
+    File targetDir = PluginArchives.getCentralDirectory(centralPluginInstallDir, plugin);
+
+    synchronized (PluginArchives.lockFor(targetDir)) {
+      if (!targetDir.exists()) {
+        logger.info(String.format("Installing Plugin %s:%s into (%s)", PluginArchives.getPluginName(plugin), plugin.getVersion(), targetDir.getAbsolutePath()));
+        PluginArchives.extract(plugin, targetDir);
+      }
+    }
+  }
+
+  /**
+   * @return whether any of the phases or goals the build was started with needs the Grails classpath.
+   */
+  private static boolean needsGrailsClasspath(List<String> goals) {
+    for (String goal : goals) {
+      if (!goal.contains(":")) {
+        if (CLASSPATH_PHASES.contains(goal)) return true;
+        continue;
+      }
+
+      // prefix:goal, groupId:artifactId:goal or groupId:artifactId:version:goal
+      String[] parts = goal.split(":");
+      boolean thisPlugin = parts.length == 2 ? PLUGIN_PREFIX.equals(parts[0]) : PLUGIN_ARTIFACT_ID.equals(parts[1]);
+
+      if (thisPlugin && !NON_CLASSPATH_GOALS.contains(parts[parts.length - 1])) return true;
+    }
+
+    return false;
+  }
+
+  private static boolean dependsOnAny(MavenProject project, Set<String> projects) {
+    for (Dependency dependency : project.getDependencies()) {
+      if (projects.contains(dependency.getGroupId() + ":" + dependency.getArtifactId()))
+        return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * A mojo parameter as the mojo would see it: the plugin's configuration in the project, else the user or system
+   * property, else the default.
+   */
+  private static String getSetting(MavenSession session, MavenProject project, String name, String property, String defaultValue) {
+    for (Plugin plugin : project.getBuildPlugins()) {
+      if (PLUGIN_GROUP_ID.equals(plugin.getGroupId()) && PLUGIN_ARTIFACT_ID.equals(plugin.getArtifactId()) && plugin.getConfiguration() instanceof Xpp3Dom) {
+        Xpp3Dom value = ((Xpp3Dom) plugin.getConfiguration()).getChild(name);
+
+        if (value != null && value.getValue() != null && !value.getValue().contains("${"))
+          return value.getValue().trim();
+      }
+    }
+
+    if (property != null) {
+      if (session.getUserProperties().getProperty(property) != null)
+        return session.getUserProperties().getProperty(property);
+
+      if (session.getSystemProperties().getProperty(property) != null)
+        return session.getSystemProperties().getProperty(property);
+    }
+
+    return defaultValue;
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Finds test classes in the Grails test source layout (test/unit, test/integration, test/functional) and turns
+ * them into the target patterns that the Grails TestApp script understands.
+ *
+ * @since 4.2
+ */
+public class GrailsTestSources {
+
+  /**
+   * The class name suffixes Grails uses to recognise JUnit tests and Spock specifications.
+   */
+  private static final String[] TEST_SUFFIXES = {"Tests", "Test", "Spec"};
+
+  private static final String[] SOURCE_EXTENSIONS = {".groovy", ".java"};
+
+  /**
+   * Lists the fully qualified names of all test classes under a test source directory, such as test/functional,
+   * in name order so that the result is the same on every machine.
+   *
+   * @param testSourceDir the root of the test sources, it need not exist.
+   * @return the class names, never null.
+   */
+  public static List<String> findTestClasses(File testSourceDir) {
+    List<String> classNames = new ArrayList<String>();
+
+    if (testSourceDir.isDirectory()) {
+      collectTestClasses(testSourceDir, "", classNames);
+    }
+
+    Collections.sort(classNames);
+
+    return classNames;
+  }
+
+  private static void collectTestClasses(File dir, String packagePrefix, List<String> classNames) {
+    File[] files = dir.listFiles();
+
+    if (files == null) return;
+
+    for (File file : files) {
+      if (file.isDirectory()) {
+        if (!file.getName().startsWith("."))
+          collectTestClasses(file, packagePrefix + file.getName() + ".", classNames);
+      } else {
+        String className = stripExtension(file.getName());
+
+        if (className != null && testSuffixOf(className) != null) {
+          classNames.add(packagePrefix + className);
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts a test class name into a TestApp target pattern. Grails adds the test suffixes back itself, so
+   * "com.acme.BookControllerSpec" becomes "com.acme.BookController".
+   */
+  public static String toTargetPattern(String className) {
+    String suffix = testSuffixOf(className);
+
+    return suffix == null ? className : className.substring(0, className.length() - suffix.length());
+  }
+
+  /**
+   * Translates Surefire style test patterns - "BookSpec,com.acme.*Controller*,AuthorTests#testName" - into
+   * TestApp target patterns. Paths, file extensions and a leading "**&#47;" are accepted and dropped, and
+   * "Class#method" becomes the "Class.method" form Grails uses to select a single test.
+   *
+   * @param testPatterns comma separated patterns, may be null.
+   * @return the target patterns, empty if there were none.
+   */
+  public static List<String> toTargetPatterns(String testPatterns) {
+    List<String> targetPatterns = new ArrayList<String>();
+
+    for (String[] pattern : parsePatterns(testPatterns)) {
+      targetPatterns.add(toTargetPattern(pattern[0]) + (pattern[1] == null ? "" : "." + pattern[1]));
+    }
+
+    return targetPatterns;
+  }
+
+  /**
+   * Filters class names down to those selected by the test patterns. Only the class part of a pattern is
+   * considered. A pattern without a package is matched against the simple class name, "*" matches within a
+   * package and "**" across packages. A pattern may leave off the test suffix, so "BookController"
+   * selects BookControllerSpec.
+   *
+   * @param classNames   fully qualified test class names.
+   * @param testPatterns comma separated patterns as for {@link #toTargetPatterns(String)}, null selects everything.
+   * @return the selected class names in their original order.
+   */
+  public static List<String> selectTestClasses(List<String> classNames, String testPatterns) {
+    List<String[]> patterns = parsePatterns(testPatterns);
+
+    if (patterns.isEmpty()) return classNames;
+
+    List<Pattern> matchers = new ArrayList<Pattern>();
+    List<Boolean> qualified = new ArrayList<Boolean>();
+
+    for (String[] pattern : patterns) {
+      matchers.add(globToRegex(pattern[0]));
+      qualified.add(pattern[0].indexOf('.') >= 0);
+    }
+
+    List<String> selected = new ArrayList<String>();
+
+    for (String className : classNames) {
+      String simpleName = className.substring(className.lastIndexOf('.') + 1);
+
+      for (int i = 0; i < matchers.size(); i++) {
+        String candidate = qualified.get(i) ? className : simpleName;
+
+        if (matchers.get(i).matcher(candidate).matches() || matchers.get(i).matcher(toTargetPattern(candidate)).matches()) {
+          selected.add(className);
+          break;
+        }
+      }
+    }
+
+    return selected;
+  }
+
+  /**
+   * @return each pattern as a {class part, method or null} pair.
+   */
+  private static List<String[]> parsePatterns(String testPatterns) {
+    List<String[]> patterns = new ArrayList<String[]>();
+
+    if (testPatterns == null) return patterns;
+
+    for (String pattern : testPatterns.split(",")) {
+      pattern = pattern.trim();
+
+      String method = null;
+      int hash = pattern.indexOf('#');
+      if (hash >= 0) {
+        method = pattern.substring(hash + 1).trim();
+        pattern = pattern.substring(0, hash);
+        if (method.length() == 0)
+          method = null;
+      }
+
+      while (pattern.startsWith("**/"))
+        pattern = pattern.substring(3);
+
+      String withoutExtension = stripExtension(pattern);
+      if (withoutExtension == null && pattern.endsWith(".class"))
+        withoutExtension = pattern.substring(0, pattern.length() - ".class".length());
+      if (withoutExtension != null)
+        pattern = withoutExtension;
+
+      pattern = pattern.replace('/', '.').replace('\\', '.');
+
+      if (pattern.length() > 0)
+        patterns.add(new String[]{pattern, method});
+    }
+
+    return patterns;
+  }
+
+  private static Pattern globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+
+      if (c == '*') {
+        if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+          regex.append(".*");
+          i++;
+        } else {
+          regex.append("[^.]*");
+        }
+      } else if (c == '?') {
+        regex.append("[^.]");
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+
+    return Pattern.compile(regex.toString());
+  }
+
+  private static String testSuffixOf(String className) {
+    for (String suffix : TEST_SUFFIXES) {
+      if (className.endsWith(suffix) && className.length() > suffix.length())
+        return suffix;
+    }
+
+    return null;
+  }
+
+  private static String stripExtension(String fileName) {
+    for (String extension : SOURCE_EXTENSIONS) {
+      if (fileName.endsWith(extension))
+        return fileName.substring(0, fileName.length() - extension.length());
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Puts files in place as hard links where the file system allows it, falling back to copying them. A hard link
+ * costs no I/O and no space, but it shares its content with the original, so it must not be written to.
+ *
+ * @since 4.2
+ */
+public class HardLinks {
+
+  private HardLinks() {
+  }
+
+  /**
+   * Replaces the target with a hard link to the source, or a copy of it.
+   *
+   * @return true if a link was made, false if the file was copied.
+   */
+  public static boolean linkOrCopy(File source, File target) throws IOException {
+    target.getAbsoluteFile().getParentFile().mkdirs();
+    Files.deleteIfExists(target.toPath());
+
+    try {
+      Files.createLink(target.toPath(), source.toPath());
+      return true;
+    } catch (UnsupportedOperationException e) {
+      // no hard links on this file system
+    } catch (IOException e) {
+      // e.g. the source is on another file system
+    }
+
+    FileUtils.copyFile(source, target);
+    return false;
+  }
+}
@@ -0,0 +1,570 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.grails.launcher.RootLoader;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * A RootLoader that knows which jars hold which packages, so that a class or resource is only looked for in the
+ * jars that can have it rather than in every jar on the classpath in turn. Lookups that fail - and Grails does
+ * many of those, probing for plugin descriptors and optional classes - do not touch any jar at all.
+ *
+ * The index of a classpath is written to a cache directory, named after a fingerprint of the jars' paths, sizes
+ * and last modified times, so it is built once per classpath rather than once per run. Directories are never
+ * indexed, their content changes during the build, so they are always searched. Jars added later with addURL
+ * are indexed as they are added.
+ *
+ * The URLs are not handed to URLClassLoader at all, so its own linear search never finds anything and ends at once.
+ * Classes and resources are found in the same order as it would find them, including the jars named by the
+ * Class-Path of jar manifests, and like RootLoader the classpath is searched before the parent class loader.
+ *
+ * It can also record which classpath entries actually served a class or resource, to find the jars a build
+ * carries around for nothing.
+ *
+ * It is also used in forked Grails JVMs, so it only depends on the JDK and the Grails launcher.
+ *
+ * @since 4.2
+ */
+public class IndexedRootLoader extends RootLoader {
+
+  private static final String INDEX_VERSION = "1";
+  private static final int KEPT_INDEXES = 4;
+
+  private final List<URL> urls = new ArrayList<URL>();
+  private final List<Source> sources = new ArrayList<Source>();
+  private final List<Source> directories = new ArrayList<Source>();
+  private final Map<String, List<Source>> packages = new HashMap<String, List<Source>>();
+
+  private IndexedRootLoader(URL[] urls) {
+    super(new URL[0]);
+
+    this.urls.addAll(Arrays.asList(urls));
+  }
+
+  /**
+   * Creates the class loader, reading the index from the cache directory or building and writing it there.
+   *
+   * @return the indexed loader, or a plain RootLoader if some of the URLs are not local files.
+   */
+  public static RootLoader create(URL[] urls, File cacheDir) throws IOException {
+    for (URL url : urls) {
+      if (!"file".equals(url.getProtocol()))
+        return new RootLoader(urls);
+    }
+
+    IndexedRootLoader loader = new IndexedRootLoader(urls);
+
+    File cacheFile = new File(cacheDir, "index-" + fingerprint(urls) + ".txt");
+
+    if (cacheFile.isFile() && loader.readIndex(cacheFile)) {
+      cacheFile.setLastModified(System.currentTimeMillis());
+    } else {
+      loader.clearIndex();
+      loader.buildIndex(urls);
+      loader.writeIndex(cacheFile);
+    }
+
+    return loader;
+  }
+
+  @Override
+  public synchronized void addURL(URL url) {
+    urls.add(url);
+
+    try {
+      addSource(url, true);
+    } catch (IOException e) {
+      // unreadable now, so it would not have served anything through URLClassLoader either
+    }
+  }
+
+  @Override
+  public synchronized URL[] getURLs() {
+    return urls.toArray(new URL[urls.size()]);
+  }
+
+  @Override
+  protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    Class<?> loaded = findLoadedClass(name);
+
+    // RootLoader always takes org.w3c.dom.Node from its parent, leave those to it
+    if (loaded == null && !name.startsWith("org.w3c.dom."))
+      loaded = findIndexedClass(name);
+
+    if (loaded == null)
+      return super.loadClass(name, resolve);
+
+    if (resolve)
+      resolveClass(loaded);
+
+    return loaded;
+  }
+
+  /**
+   * @return the class from the classpath, or null if it is not there.
+   */
+  private Class<?> findIndexedClass(String name) throws ClassNotFoundException {
+    String path = name.replace('.', '/') + ".class";
+
+    for (Source source : candidates(path)) {
+      try {
+        Source.Content content = source.read(path);
+
+        if (content != null) {
+          source.used = true;
+          definePackageFor(name, source);
+          return defineClass(name, content.bytes, 0, content.bytes.length, new CodeSource(source.url, content.signers));
+        }
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public URL findResource(String name) {
+    for (Source source : candidates(name)) {
+      URL url = source.findResource(name);
+
+      if (url != null) {
+        source.used = true;
+        return url;
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public Enumeration<URL> findResources(String name) throws IOException {
+    List<URL> urls = new ArrayList<URL>();
+
+    for (Source source : candidates(name)) {
+      URL url = source.findResource(name);
+
+      if (url != null) {
+        source.used = true;
+        urls.add(url);
+      }
+    }
+
+    return Collections.enumeration(urls);
+  }
+
+  /**
+   * @return the jars and directories that a class or resource has been loaded from so far.
+   */
+  public synchronized List<File> getUsedFiles() {
+    List<File> files = new ArrayList<File>();
+
+    for (Source source : sources) {
+      if (source.used)
+        files.add(source.file);
+    }
+
+    return files;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      for (Source source : sources) {
+        source.close();
+      }
+    } finally {
+      super.close();
+    }
+  }
+
+  /**
+   * The jars indexed as having the package of the path, and all directories, in classpath order.
+   */
+  private synchronized List<Source> candidates(String path) {
+    if (path.startsWith("/"))
+      path = path.substring(1);
+
+    List<Source> indexed = packages.get(packageOf(path));
+
+    if (indexed == null)
+      return new ArrayList<Source>(directories);
+    if (directories.isEmpty())
+      return new ArrayList<Source>(indexed);
+
+    List<Source> merged = new ArrayList<Source>(indexed.size() + directories.size());
+    int i = 0;
+    int d = 0;
+
+    while (i < indexed.size() || d < directories.size()) {
+      if (d == directories.size() || (i < indexed.size() && indexed.get(i).position < directories.get(d).position))
+        merged.add(indexed.get(i++));
+      else
+        merged.add(directories.get(d++));
+    }
+
+    return merged;
+  }
+
+  private void definePackageFor(String className, Source source) throws IOException {
+    int dot = className.lastIndexOf('.');
+
+    if (dot < 0) return;
+
+    String packageName = className.substring(0, dot);
+
+    if (getPackage(packageName) != null) return;
+
+    try {
+      Manifest manifest = source.getManifest();
+
+      if (manifest != null)
+        definePackage(packageName, manifest, source.url);
+      else
+        definePackage(packageName, null, null, null, null, null, null, null);
+    } catch (IllegalArgumentException e) {
+      // defined by another thread in the meantime
+    }
+  }
+
+  private void clearIndex() {
+    for (Source source : sources) {
+      source.close();
+    }
+
+    sources.clear();
+    directories.clear();
+    packages.clear();
+  }
+
+  private void buildIndex(URL[] urls) throws IOException {
+    for (URL url : urls) {
+      addSource(url, true);
+    }
+  }
+
+  /**
+   * Adds a classpath entry, indexing the packages of a jar and following its manifest's Class-Path.
+   */
+  private void addSource(URL url, boolean index) throws IOException {
+    File file = toFile(url);
+
+    for (Source source : sources) {
+      if (source.file.equals(file)) return;
+    }
+
+    Source source = new Source(url, file, sources.size());
+    sources.add(source);
+
+    if (file.isDirectory()) {
+      directories.add(source);
+      return;
+    }
+
+    if (!file.isFile() || !index) return;
+
+    List<URL> classPath = new ArrayList<URL>();
+    JarFile jar = new JarFile(file);
+
+    try {
+      Enumeration<JarEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        addPackage(packageOf(entries.nextElement().getName()), source);
+      }
+
+      Manifest manifest = jar.getManifest();
+      String value = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+
+      if (value != null) {
+        for (String path : value.trim().split("\\s+")) {
+          try {
+            classPath.add(new URL(url, path));
+          } catch (MalformedURLException e) {
+            // URLClassLoader ignores those too
+          }
+        }
+      }
+    } finally {
+      jar.close();
+    }
+
+    for (URL classPathUrl : classPath) {
+      if ("file".equals(classPathUrl.getProtocol()))
+        addSource(classPathUrl, true);
+    }
+  }
+
+  private void addPackage(String packageName, Source source) {
+    List<Source> jars = packages.get(packageName);
+
+    if (jars == null) {
+      jars = new ArrayList<Source>(1);
+      packages.put(packageName, jars);
+    }
+
+    if (jars.isEmpty() || jars.get(jars.size() - 1) != source)
+      jars.add(source);
+  }
+
+  /**
+   * Reads a cached index: the classpath entries in order, then the entries holding each package.
+   *
+   * @return false if the cache file is unusable.
+   */
+  private boolean readIndex(File cacheFile) {
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(cacheFile), "UTF-8"));
+
+      try {
+        if (!("version\t" + INDEX_VERSION).equals(reader.readLine()))
+          return false;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] parts = line.split("\t", -1);
+
+          if (parts.length == 2 && parts[0].equals("url")) {
+            addSource(new URL(parts[1]), false);
+          } else if (parts.length == 3 && parts[0].equals("package")) {
+            for (String position : parts[2].split(",")) {
+              addPackage(parts[1], sources.get(Integer.parseInt(position)));
+            }
+          } else {
+            return false;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+
+      return true;
+    } catch (IOException e) {
+      return false;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  private void writeIndex(File cacheFile) throws IOException {
+    // keep the indexes of a few recent classpaths, a build runs Grails with more than one (e.g. with and without
+    // test dependencies)
+    File[] previous = cacheFile.getParentFile().listFiles();
+    if (previous != null && previous.length >= KEPT_INDEXES) {
+      Arrays.sort(previous, new Comparator<File>() {
+        public int compare(File a, File b) {
+          return Long.valueOf(b.lastModified()).compareTo(a.lastModified());
+        }
+      });
+
+      for (int i = KEPT_INDEXES - 1; i < previous.length; i++) {
+        previous[i].delete();
+      }
+    }
+
+    cacheFile.getParentFile().mkdirs();
+
+    File tempFile = new File(cacheFile.getPath() + ".tmp");
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+
+    try {
+      writer.print("version\t" + INDEX_VERSION + "\n");
+
+      for (Source source : sources) {
+        writer.print("url\t" + source.url + "\n");
+      }
+
+      for (Map.Entry<String, List<Source>> entry : packages.entrySet()) {
+        StringBuilder positions = new StringBuilder();
+        for (Source source : entry.getValue()) {
+          if (positions.length() > 0) positions.append(',');
+          positions.append(source.position);
+        }
+
+        writer.print("package\t" + entry.getKey() + "\t" + positions + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+
+    if (writer.checkError() || !tempFile.renameTo(cacheFile)) {
+      tempFile.delete();
+      throw new IOException("Unable to write " + cacheFile);
+    }
+  }
+
+  private static String fingerprint(URL[] urls) throws IOException {
+    MessageDigest digest = Fingerprints.newDigest();
+
+    for (URL url : urls) {
+      File file = toFile(url);
+      Fingerprints.update(digest, file.isDirectory() ? "dir|" + file : file + "|" + file.length() + "|" + file.lastModified());
+    }
+
+    return Fingerprints.hex(digest.digest());
+  }
+
+  private static String packageOf(String path) {
+    int slash = path.lastIndexOf('/');
+
+    return slash < 0 ? "" : path.substring(0, slash);
+  }
+
+  private static File toFile(URL url) throws IOException {
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException e) {
+      return new File(url.getPath());
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Not a file: " + url, e);
+    }
+  }
+
+  /**
+   * A classpath entry, a jar or a directory.
+   */
+  private static class Source {
+    final URL url;
+    final File file;
+    final int position;
+    volatile boolean used;
+    private JarFile jar;
+    private Manifest manifest;
+    private boolean manifestRead;
+
+    Source(URL url, File file, int position) {
+      this.url = url;
+      this.file = file;
+      this.position = position;
+    }
+
+    synchronized Content read(String path) throws IOException {
+      if (file.isDirectory()) {
+        File resource = new File(file, path);
+        return resource.isFile() ? new Content(readFully(new FileInputStream(resource)), null) : null;
+      }
+
+      JarFile jarFile = getJar();
+      JarEntry entry = jarFile == null ? null : jarFile.getJarEntry(path);
+
+      if (entry == null) return null;
+
+      byte[] bytes = readFully(jarFile.getInputStream(entry));
+
+      // the signers are only known once the entry has been read
+      return new Content(bytes, entry.getCodeSigners());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = in.read(buffer)) >= 0) {
+          out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+      } finally {
+        in.close();
+      }
+    }
+
+    synchronized URL findResource(String path) {
+      try {
+        if (file.isDirectory()) {
+          File resource = new File(file, path);
+          return resource.exists() ? resource.toURI().toURL() : null;
+        }
+
+        JarFile jarFile = getJar();
+
+        if (jarFile == null || jarFile.getEntry(path) == null) return null;
+
+        return new URL("jar:" + url + "!/" + path);
+      } catch (IOException e) {
+        return null;
+      }
+    }
+
+    synchronized Manifest getManifest() throws IOException {
+      if (!manifestRead && !file.isDirectory()) {
+        JarFile jarFile = getJar();
+        manifest = jarFile == null ? null : jarFile.getManifest();
+        manifestRead = true;
+      }
+
+      return manifest;
+    }
+
+    private JarFile getJar() throws IOException {
+      if (jar == null && file.isFile())
+        jar = new JarFile(file);
+
+      return jar;
+    }
+
+    synchronized void close() {
+      if (jar != null) {
+        try {
+          jar.close();
+        } catch (IOException e) {
+          // nothing more to do with it
+        }
+        jar = null;
+      }
+    }
+
+    static class Content {
+      final byte[] bytes;
+      final CodeSigner[] signers;
+
+      Content(byte[] bytes, CodeSigner[] signers) {
+        this.bytes = bytes;
+        this.signers = signers;
+      }
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads and merges the JUnit XML reports (TEST-&lt;class&gt;.xml) that Grails writes into its test reports directory.
+ *
+ * @since 4.2
+ */
+public class JUnitReports {
+
+  public static final String MERGED_REPORT_NAME = "TESTS-TestSuites.xml";
+
+  /**
+   * Finds the per class reports below a directory, in path order.
+   *
+   * @param reportsDir the directory to search, it need not exist.
+   * @return the report files, never null.
+   */
+  public static List<File> findReports(File reportsDir) {
+    List<File> reports = new ArrayList<File>();
+    collectReports(reportsDir, reports);
+    Collections.sort(reports);
+    return reports;
+  }
+
+  private static void collectReports(File dir, List<File> reports) {
+    File[] files = dir.listFiles();
+
+    if (files == null) return;
+
+    for (File file : files) {
+      if (file.isDirectory())
+        collectReports(file, reports);
+      else if (file.getName().startsWith("TEST-") && file.getName().endsWith(".xml"))
+        reports.add(file);
+    }
+  }
+
+  /**
+   * Reads how long each test class took from the reports of an earlier run. Reports that cannot be parsed are
+   * ignored, they only make the sharding less even.
+   *
+   * @param reportsDir the directory holding the reports, it need not exist.
+   * @return seconds per fully qualified test class name.
+   */
+  public static Map<String, Double> readTimings(File reportsDir) {
+    Map<String, Double> timings = new TreeMap<String, Double>();
+
+    for (File report : findReports(reportsDir)) {
+      try {
+        Element suite = newDocumentBuilder().parse(report).getDocumentElement();
+        String name = suite.getAttribute("name");
+        String time = suite.getAttribute("time");
+
+        if (name.length() > 0 && time.length() > 0) {
+          Double sofar = timings.get(name);
+          timings.put(name, (sofar == null ? 0 : sofar) + Double.parseDouble(time.replace(",", "")));
+        }
+      } catch (Exception e) {
+        // not a report we understand
+      }
+    }
+
+    return timings;
+  }
+
+  /**
+   * Combines the reports into a single &lt;testsuites&gt; document, the format of the JUnit report Ant task.
+   *
+   * @param reports      the per class reports to merge.
+   * @param mergedReport the file to write.
+   * @return the number of test suites in the merged report.
+   */
+  public static int merge(List<File> reports, File mergedReport) throws IOException {
+    try {
+      DocumentBuilder builder = newDocumentBuilder();
+      Document merged = builder.newDocument();
+      Element testsuites = merged.createElement("testsuites");
+      merged.appendChild(testsuites);
+
+      int id = 0;
+
+      for (File report : reports) {
+        Element suite = (Element) merged.importNode(builder.parse(report).getDocumentElement(), true);
+
+        if (!"testsuite".equals(suite.getTagName()))
+          continue;
+
+        String name = suite.getAttribute("name");
+        int lastDot = name.lastIndexOf('.');
+        if (!suite.hasAttribute("package"))
+          suite.setAttribute("package", lastDot < 0 ? "" : name.substring(0, lastDot));
+        suite.setAttribute("id", String.valueOf(id++));
+
+        testsuites.appendChild(suite);
+      }
+
+      mergedReport.getAbsoluteFile().getParentFile().mkdirs();
+
+      Transformer transformer = TransformerFactory.newInstance().newTransformer();
+      transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+      transformer.transform(new DOMSource(merged), new StreamResult(mergedReport));
+
+      return id;
+    } catch (SAXException e) {
+      throw new IOException("Unable to parse a test report", e);
+    } catch (TransformerException e) {
+      throw new IOException("Unable to write " + mergedReport, e);
+    }
+  }
+
+  private static DocumentBuilder newDocumentBuilder() throws IOException {
+    try {
+      return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    } catch (ParserConfigurationException e) {
+      throw new IOException("No XML parser available", e);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the outcome of a dependency resolution - every artifact with its scope, dependency trail and the path,
+ * size and last modified time of its file in the local repository - under a key describing what was resolved.
+ * While the key is unchanged and every file is still there as recorded, the resolution can be replayed from the
+ * manifest without building the dependency tree or asking the remote repositories about anything.
+ *
+ * @since 4.2
+ */
+public class LocalRepositoryManifest {
+
+  private static final String KEY = "key";
+  private static final String NONE = "-";
+
+  private final List<Entry> entries = new ArrayList<Entry>();
+
+  public void add(Entry entry) {
+    entries.add(entry);
+  }
+
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  public void write(File manifestFile, String key) throws IOException {
+    manifestFile.getAbsoluteFile().getParentFile().mkdirs();
+
+    File tempFile = new File(manifestFile.getPath() + ".tmp");
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+
+    try {
+      writer.print(KEY + "\t" + key + "\n");
+
+      for (Entry entry : entries) {
+        writer.print(entry.groupId + "\t" + entry.artifactId + "\t" + entry.version + "\t" + entry.type + "\t" +
+          orNone(entry.classifier) + "\t" + orNone(entry.scope) + "\t" + entry.file.length() + "\t" + entry.file.lastModified() + "\t" +
+          entry.file.getAbsolutePath() + "\t" + orNone(join(entry.dependencyTrail)) + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+
+    if (writer.checkError() || (manifestFile.exists() && !manifestFile.delete()) || !tempFile.renameTo(manifestFile)) {
+      tempFile.delete();
+      throw new IOException("Unable to write " + manifestFile);
+    }
+  }
+
+  /**
+   * @return the manifest, or null if there is none for this key or any of its files has gone or changed since.
+   */
+  public static LocalRepositoryManifest read(File manifestFile, String key) throws IOException {
+    if (!manifestFile.isFile()) return null;
+
+    LocalRepositoryManifest manifest = new LocalRepositoryManifest();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), "UTF-8"));
+
+    try {
+      if (!(KEY + "\t" + key).equals(reader.readLine())) return null;
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", -1);
+
+        if (fields.length != 10) return null;
+
+        File file = new File(fields[8]);
+        if (!file.isFile() || file.length() != Long.parseLong(fields[6]) || file.lastModified() != Long.parseLong(fields[7]))
+          return null;
+
+        List<String> trail = fields[9].equals(NONE) ? null : Arrays.asList(fields[9].split(","));
+        manifest.add(new Entry(fields[0], fields[1], fields[2], fields[3], fromNone(fields[4]), fromNone(fields[5]), file, trail));
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    } finally {
+      reader.close();
+    }
+
+    return manifest;
+  }
+
+  private static String orNone(String value) {
+    return value == null || value.length() == 0 ? NONE : value;
+  }
+
+  private static String fromNone(String value) {
+    return NONE.equals(value) ? null : value;
+  }
+
+  private static String join(List<String> values) {
+    if (values == null) return null;
+
+    StringBuilder joined = new StringBuilder();
+    for (String value : values) {
+      if (joined.length() > 0) joined.append(',');
+      joined.append(value);
+    }
+
+    return joined.toString();
+  }
+
+  public static class Entry {
+    public final String groupId;
+    public final String artifactId;
+    public final String version;
+    public final String type;
+    public final String classifier;
+    public final String scope;
+    public final File file;
+    public final List<String> dependencyTrail;
+
+    public Entry(String groupId, String artifactId, String version, String type, String classifier, String scope,
+                 File file, List<String> dependencyTrail) {
+      this.groupId = groupId;
+      this.artifactId = artifactId;
+      this.version = version;
+      this.type = type;
+      this.classifier = classifier;
+      this.scope = scope;
+      this.file = file;
+      this.dependencyTrail = dependencyTrail == null ? null : Collections.unmodifiableList(new ArrayList<String>(dependencyTrail));
+    }
+  }
+}
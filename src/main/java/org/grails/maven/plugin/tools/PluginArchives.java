@@ -0,0 +1,103 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.zip.ZipUnArchiver;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Knows which artifacts are Grails plugins, where they go in the central plugin directory and how they are
+ * extracted there.
+ *
+ * @since 4.2
+ */
+public class PluginArchives {
+
+  public static final String PLUGIN_PREFIX = "grails-";
+
+  private static final ConcurrentMap<File, Object> locks = new ConcurrentHashMap<File, Object>();
+
+  public static boolean isPlugin(Artifact artifact) {
+    return isPlugin(artifact.getType(), artifact.getClassifier());
+  }
+
+  /**
+   * @return whether an artifact, or a dependency, of the given type and classifier is a Grails plugin.
+   */
+  public static boolean isPlugin(String type, String classifier) {
+    return type != null && (type.equals("grails-plugin") || type.equals("zip") || (type.equals("grails-plugin2") && "plugin".equals(classifier)));
+  }
+
+  /**
+   * @return the artifact id without the grails- prefix.
+   */
+  public static String getPluginName(Artifact plugin) {
+    String pluginName = plugin.getArtifactId();
+
+    return pluginName.startsWith(PLUGIN_PREFIX) ? pluginName.substring(PLUGIN_PREFIX.length()) : pluginName;
+  }
+
+  public static File getCentralDirectory(File centralPluginInstallDir, Artifact plugin) {
+    return new File(centralPluginInstallDir, getPluginName(plugin) + "-" + plugin.getVersion());
+  }
+
+  /**
+   * @return what to hold while checking for and extracting a plugin into the directory, so that a plugin is not
+   *         seen half extracted.
+   */
+  public static Object lockFor(File targetDir) {
+    File key = targetDir.getAbsoluteFile();
+    Object lock = locks.get(key);
+
+    if (lock == null) {
+      Object newLock = new Object();
+      lock = locks.putIfAbsent(key, newLock);
+      if (lock == null) lock = newLock;
+    }
+
+    return lock;
+  }
+
+  /**
+   * Unpacks the plugin into the directory, along with its pom as pom.xml.
+   */
+  public static void extract(Artifact plugin, File targetDir) throws IOException {
+    targetDir.mkdirs();
+
+    final ZipUnArchiver unzipper = new ZipUnArchiver();
+    unzipper.enableLogging(new ConsoleLogger(Logger.LEVEL_ERROR, "zip-unarchiver"));
+    unzipper.setSourceFile(plugin.getFile());
+    unzipper.setDestDirectory(targetDir);
+    unzipper.setOverwrite(true);
+    try {
+      unzipper.extract();
+    } catch (ArchiverException e) {
+      throw new IOException("Unable to extract " + plugin.getFile(), e);
+    }
+
+    File inputPom = new File(plugin.getFile().getParentFile(), getPluginName(plugin) + "-" + plugin.getVersion() + ".pom");
+    FileUtils.copyFile(inputPom, new File(targetDir, "pom.xml"));
+  }
+}
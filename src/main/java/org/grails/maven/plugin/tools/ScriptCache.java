@@ -0,0 +1,172 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Keeps the Gant scripts Grails compiles (into scriptCache in the project work directory, where the script runner
+ * looks for them before compiling a script) in a directory that outlives target, keyed by the Grails version and
+ * the hash of every script the build can load. Before Grails runs, the compiled scripts for the key are put in
+ * place; after it has run, whatever it compiled is kept for the next build, of this project or any other with the
+ * same scripts.
+ *
+ * The script runner recompiles a script that is newer than its compiled class. Within a key the scripts are the
+ * ones the classes were compiled from, so the classes are given the current time as they are put in place, and a
+ * checkout that only touched the scripts compiles nothing.
+ *
+ * @since 4.2
+ */
+public class ScriptCache {
+
+  public static final String DIRECTORY_NAME = "scriptCache";
+
+  private static final String KEY_FILE = ".key";
+  private static final int KEPT_KEYS = 20;
+
+  private final File cacheDir;
+  private final File workDir;
+  private final String key;
+
+  public ScriptCache(File cacheRoot, String key, File projectWorkDir) {
+    this.cacheDir = new File(cacheRoot, key);
+    this.workDir = new File(projectWorkDir, DIRECTORY_NAME);
+    this.key = key;
+  }
+
+  /**
+   * @return the key for the Grails version and the *.groovy scripts in the scripts directory of each root.
+   */
+  public static String key(String grailsVersion, List<File> roots) throws IOException {
+    TreeMap<String, String> scripts = new TreeMap<String, String>();
+
+    for (File root : roots) {
+      File[] files = new File(root, "scripts").listFiles();
+
+      if (files == null) continue;
+
+      for (File file : files) {
+        if (file.isFile() && file.getName().endsWith(".groovy"))
+          scripts.put(file.getAbsolutePath(), Fingerprints.of(file));
+      }
+    }
+
+    MessageDigest digest = Fingerprints.newDigest();
+    Fingerprints.update(digest, "grails|" + grailsVersion);
+
+    for (String script : scripts.keySet()) {
+      // the name decides the class name, the directory does not matter
+      Fingerprints.update(digest, new File(script).getName() + "|" + scripts.get(script));
+    }
+
+    return Fingerprints.hex(digest.digest());
+  }
+
+  /**
+   * Puts the compiled scripts for the key into the project work directory, replacing any compiled for other
+   * scripts.
+   *
+   * @return the number of compiled scripts put in place.
+   */
+  public int restore() throws IOException {
+    File keyFile = new File(workDir, KEY_FILE);
+
+    if (!keyFile.isFile() || !key.equals(FileUtils.readFileToString(keyFile, "UTF-8").trim()))
+      FileUtils.deleteDirectory(workDir);
+
+    workDir.mkdirs();
+    FileUtils.writeStringToFile(keyFile, key, "UTF-8");
+
+    File[] compiled = cacheDir.listFiles();
+    if (compiled == null) return 0;
+
+    long now = System.currentTimeMillis();
+    cacheDir.setLastModified(now);
+
+    int restored = 0;
+    for (File source : compiled) {
+      if (!source.isFile()) continue;
+
+      File target = new File(workDir, source.getName());
+      if (!target.isFile() || target.length() != source.length())
+        HardLinks.linkOrCopy(source, target);
+
+      target.setLastModified(now);
+      restored++;
+    }
+
+    return restored;
+  }
+
+  /**
+   * Keeps what Grails compiled into the project work directory under the key, and drops the least recently used
+   * keys beyond the twenty most recent.
+   *
+   * @return the number of newly compiled scripts kept.
+   */
+  public int store() throws IOException {
+    File[] compiled = workDir.listFiles();
+    if (compiled == null) return 0;
+
+    int stored = 0;
+    for (File source : compiled) {
+      if (!source.isFile() || source.getName().equals(KEY_FILE)) continue;
+
+      File target = new File(cacheDir, source.getName());
+      if (target.isFile() && target.length() == source.length()) continue;
+
+      // copied under another name first so that a concurrent build never sees half a class
+      File tempFile = new File(cacheDir, source.getName() + "." + Thread.currentThread().getId() + ".tmp");
+      FileUtils.copyFile(source, tempFile);
+      if (!tempFile.renameTo(target) && !(target.delete() && tempFile.renameTo(target))) {
+        tempFile.delete();
+        throw new IOException("Unable to store " + target);
+      }
+
+      stored++;
+    }
+
+    if (stored > 0) prune(cacheDir.getParentFile());
+
+    return stored;
+  }
+
+  private static void prune(File cacheRoot) throws IOException {
+    File[] keys = cacheRoot.listFiles();
+    if (keys == null || keys.length <= KEPT_KEYS) return;
+
+    List<File> oldestFirst = new ArrayList<File>(Arrays.asList(keys));
+    Collections.sort(oldestFirst, new Comparator<File>() {
+      public int compare(File a, File b) {
+        return Long.valueOf(a.lastModified()).compareTo(b.lastModified());
+      }
+    });
+
+    for (File key : oldestFirst.subList(0, oldestFirst.size() - KEPT_KEYS)) {
+      if (key.isDirectory()) FileUtils.deleteDirectory(key);
+    }
+  }
+}
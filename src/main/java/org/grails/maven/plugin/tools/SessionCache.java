@@ -0,0 +1,99 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.maven.artifact.metadata.ResolutionGroup;
+import org.apache.maven.project.MavenProject;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches built projects and dependency metadata by coordinates for the length of a Maven session, so that the
+ * modules of a reactor build do not each build the same POMs again. Each cache holds at most a given number of
+ * entries and drops the least recently used beyond that. A new session starts with empty caches.
+ *
+ * @since 4.2
+ */
+public class SessionCache {
+
+  private static WeakReference<Object> currentSession = new WeakReference<Object>(null);
+  private static SessionCache current;
+
+  private final Map<String, MavenProject> projects;
+  private final Map<String, ResolutionGroup> metadata;
+  private int hits;
+  private int misses;
+
+  private SessionCache(int maxEntries) {
+    this.projects = leastRecentlyUsed(maxEntries);
+    this.metadata = leastRecentlyUsed(maxEntries);
+  }
+
+  /**
+   * @return the cache of the session, created on the first call for the session.
+   */
+  public static synchronized SessionCache forSession(Object session, int maxEntries) {
+    if (current == null || currentSession.get() != session) {
+      currentSession = new WeakReference<Object>(session);
+      current = new SessionCache(maxEntries);
+    }
+
+    return current;
+  }
+
+  public MavenProject getProject(String key) {
+    return count(projects.get(key));
+  }
+
+  public void putProject(String key, MavenProject project) {
+    projects.put(key, project);
+  }
+
+  public ResolutionGroup getMetadata(String key) {
+    return count(metadata.get(key));
+  }
+
+  public void putMetadata(String key, ResolutionGroup group) {
+    metadata.put(key, group);
+  }
+
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  private synchronized <T> T count(T value) {
+    if (value == null) misses++;
+    else hits++;
+
+    return value;
+  }
+
+  private static <K, V> Map<K, V> leastRecentlyUsed(final int maxEntries) {
+    return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxEntries;
+      }
+    });
+  }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds the zip of a source plugin straight from the project tree, the way the Grails PackagePlugin script does
+ * but without starting Grails. The files are selected with the same rules as Grails' PluginPackager - the plugin
+ * sources and resources, less the application-only configuration, tests and the descriptor's pluginExcludes.
+ *
+ * The plugin.xml is generated from the descriptor's properties, the artefact sources under grails-app and the
+ * repositories, dependencies and plugins added to the packager, and BuildConfig.groovy is shipped as
+ * dependencies.groovy so that projects installing the plugin see its dependencies. Unlike Grails, the packager
+ * compiles nothing, so a plugin that does not compile is packaged all the same.
+ *
+ * @since 4.2
+ */
+public class SourcePluginPackager {
+
+  public static final List<String> INCLUDES = Collections.unmodifiableList(Arrays.asList(
+    "application.properties",
+    "*GrailsPlugin.groovy",
+    "grails-app/**",
+    "lib/**",
+    "scripts/**",
+    "web-app/**",
+    "src/**",
+    "docs/api/**",
+    "docs/gapi/**"));
+
+  public static final List<String> EXCLUDES = Collections.unmodifiableList(Arrays.asList(
+    "web-app/WEB-INF/**",
+    "web-app/plugins/**",
+    "grails-app/conf/spring/resources.groovy",
+    "grails-app/conf/*DataSource.groovy",
+    "grails-app/conf/BootStrap.groovy",
+    "grails-app/conf/Config.groovy",
+    "grails-app/conf/BuildConfig.groovy",
+    "grails-app/conf/UrlMappings.groovy",
+    "test/**",
+    "plugin.xml",
+    "dependencies.groovy"));
+
+  /**
+   * grails-app directories that hold no classes.
+   */
+  private static final List<String> NON_ARTEFACT_DIRECTORIES = Arrays.asList("views", "i18n", "assets", "migrations");
+
+  private static final String BUILD_CONFIG = "grails-app/conf/BuildConfig.groovy";
+
+  private final File basedir;
+  private final GrailsPluginProject plugin;
+  private final Map<String, String> repositories = new LinkedHashMap<String, String>();
+  private final Map<String, List<String>> dependencies = new TreeMap<String, List<String>>();
+  private final Map<String, List<String>> plugins = new TreeMap<String, List<String>>();
+
+  public SourcePluginPackager(File basedir, GrailsPluginProject plugin) {
+    this.basedir = basedir;
+    this.plugin = plugin;
+  }
+
+  public void addRepository(String name, String url) {
+    repositories.put(name, url);
+  }
+
+  /**
+   * Adds a dependency the plugin exports, for the &lt;dependencies&gt; of plugin.xml.
+   */
+  public void addDependency(String scope, String group, String name, String version) {
+    add(dependencies, scope, "<dependency group='" + escape(group) + "' name='" + escape(name) + "' version='" + escape(version) + "' />");
+  }
+
+  /**
+   * Adds a plugin the plugin depends on, for the &lt;plugins&gt; of plugin.xml.
+   */
+  public void addPlugin(String scope, String group, String name, String version) {
+    add(plugins, scope, "<plugin group='" + escape(group) + "' name='" + escape(name) + "' version='" + escape(version) + "' />");
+  }
+
+  /**
+   * @return the project files that go into the zip, relative to the base directory with / as the separator.
+   */
+  public List<String> listFiles() {
+    List<String> excludes = new ArrayList<String>(EXCLUDES);
+    excludes.addAll(getPluginExcludes());
+
+    DirectoryScanner scanner = new DirectoryScanner();
+    scanner.setBasedir(basedir);
+    scanner.setIncludes(INCLUDES.toArray(new String[INCLUDES.size()]));
+    scanner.setExcludes(excludes.toArray(new String[excludes.size()]));
+    scanner.addDefaultExcludes();
+    scanner.scan();
+
+    List<String> files = new ArrayList<String>();
+    for (String file : scanner.getIncludedFiles()) {
+      files.add(file.replace(File.separatorChar, '/'));
+    }
+
+    Collections.sort(files);
+
+    return files;
+  }
+
+  /**
+   * Writes the plugin zip.
+   *
+   * @return the number of entries written.
+   */
+  public int write(File zipFile) throws IOException {
+    List<String> files = listFiles();
+
+    zipFile.getAbsoluteFile().getParentFile().mkdirs();
+
+    File tempFile = new File(zipFile.getPath() + ".tmp");
+    ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(tempFile));
+    int entries = 0;
+
+    try {
+      for (String file : files) {
+        addEntry(zip, file, new File(basedir, file));
+        entries++;
+      }
+
+      addEntry(zip, "plugin.xml", System.currentTimeMillis(), new ByteArrayInputStream(generatePluginXml(files).getBytes("UTF-8")));
+      entries++;
+
+      File buildConfig = new File(basedir, BUILD_CONFIG);
+      if (buildConfig.isFile()) {
+        addEntry(zip, "dependencies.groovy", buildConfig);
+        entries++;
+      }
+    } catch (IOException e) {
+      zip.close();
+      FileUtils.deleteQuietly(tempFile);
+      throw e;
+    }
+
+    zip.close();
+
+    FileUtils.deleteQuietly(zipFile);
+    if (!tempFile.renameTo(zipFile))
+      throw new IOException("Unable to rename " + tempFile + " to " + zipFile);
+
+    return entries;
+  }
+
+  /**
+   * @param files the files going into the zip, as returned by {@link #listFiles()}.
+   */
+  public String generatePluginXml(List<String> files) {
+    Map<String, Object> properties = plugin.getProperties();
+    String descriptorName = plugin.getFileName().getName();
+
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    xml.append("<plugin name='").append(escape(plugin.getPluginName())).append("' version='").append(escape(plugin.getVersion()))
+      .append("' grailsVersion='").append(escape(toString(properties.get("grailsVersion")))).append("'>\n");
+
+    for (String element : new String[]{"author", "authorEmail", "title", "description", "documentation"}) {
+      xml.append("  <").append(element).append('>').append(escape(toString(properties.get(element))))
+        .append("</").append(element).append(">\n");
+    }
+
+    xml.append("  <type>").append(escape(descriptorName.substring(0, descriptorName.length() - ".groovy".length()))).append("</type>\n");
+
+    xml.append("  <resources>\n");
+    for (String resource : artefactClasses(files)) {
+      xml.append("    <resource>").append(escape(resource)).append("</resource>\n");
+    }
+    xml.append("  </resources>\n");
+
+    xml.append("  <repositories>\n");
+    for (Map.Entry<String, String> repository : repositories.entrySet()) {
+      xml.append("    <repository name='").append(escape(repository.getKey())).append("' url='").append(escape(repository.getValue()))
+        .append("' />\n");
+    }
+    xml.append("  </repositories>\n");
+
+    appendByScope(xml, "dependencies", dependencies);
+    appendByScope(xml, "plugins", plugins);
+
+    // the plugins the descriptor's dependsOn requires, by name and version range
+    xml.append("  <runtimePluginRequirements>\n");
+    if (properties.get("dependsOn") instanceof Map) {
+      for (Map.Entry<?, ?> required : ((Map<?, ?>) properties.get("dependsOn")).entrySet()) {
+        xml.append("    <plugin name='").append(escape(toString(required.getKey()))).append("' version='")
+          .append(escape(toString(required.getValue()))).append("' />\n");
+      }
+    }
+    xml.append("  </runtimePluginRequirements>\n");
+
+    // Grails 2 leaves it empty as well
+    xml.append("  <behavior />\n");
+
+    xml.append("</plugin>\n");
+
+    return xml.toString();
+  }
+
+  private static void appendByScope(StringBuilder xml, String element, Map<String, List<String>> entriesByScope) {
+    xml.append("  <").append(element).append(">\n");
+
+    for (Map.Entry<String, List<String>> scope : entriesByScope.entrySet()) {
+      xml.append("    <").append(scope.getKey()).append(">\n");
+      for (String entry : scope.getValue()) {
+        xml.append("      ").append(entry).append("\n");
+      }
+      xml.append("    </").append(scope.getKey()).append(">\n");
+    }
+
+    xml.append("  </").append(element).append(">\n");
+  }
+
+  private static void add(Map<String, List<String>> map, String key, String value) {
+    List<String> values = map.get(key);
+
+    if (values == null) {
+      values = new ArrayList<String>();
+      map.put(key, values);
+    }
+
+    values.add(value);
+  }
+
+  private List<String> getPluginExcludes() {
+    Object excludes = plugin.getProperties().get("pluginExcludes");
+    List<String> patterns = new ArrayList<String>();
+
+    if (excludes instanceof Collection) {
+      for (Object exclude : (Collection<?>) excludes) {
+        patterns.add(exclude.toString());
+      }
+    } else if (excludes != null) {
+      patterns.add(excludes.toString());
+    }
+
+    return patterns;
+  }
+
+  /**
+   * The classes compiled from the sources under grails-app, e.g. grails-app/controllers/com/acme/BookController.groovy
+   * is com.acme.BookController.
+   */
+  private static List<String> artefactClasses(List<String> files) {
+    List<String> classes = new ArrayList<String>();
+
+    for (String file : files) {
+      if (!file.startsWith("grails-app/") || !(file.endsWith(".groovy") || file.endsWith(".java")))
+        continue;
+
+      String path = file.substring("grails-app/".length());
+      int slash = path.indexOf('/');
+
+      if (slash < 0 || NON_ARTEFACT_DIRECTORIES.contains(path.substring(0, slash)))
+        continue;
+
+      String classFile = path.substring(slash + 1);
+      classes.add(classFile.substring(0, classFile.lastIndexOf('.')).replace('/', '.'));
+    }
+
+    return classes;
+  }
+
+  private static void addEntry(ZipOutputStream zip, String name, File file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      addEntry(zip, name, file.lastModified(), in);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void addEntry(ZipOutputStream zip, String name, long lastModified, InputStream content) throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    entry.setTime(lastModified);
+    zip.putNextEntry(entry);
+    IOUtils.copy(content, zip);
+    zip.closeEntry();
+  }
+
+  private static String toString(Object value) {
+    return value == null ? "" : value.toString();
+  }
+
+  private static String escape(String text) {
+    return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("'", "&apos;").replace("\"", "&quot;");
+  }
+}
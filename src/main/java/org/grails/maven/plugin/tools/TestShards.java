@@ -0,0 +1,103 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Splits test classes into disjoint shards so that several CI nodes can each run a part of the tests. Every node
+ * must come up with the same split, so the result only depends on the class names, the recorded timings and
+ * the shard count - never on file system order.
+ *
+ * Classes are grouped by their TestApp target pattern first (BookTests and BookSpec in the same package are
+ * selected by the same pattern, so they have to go to the same shard). The groups are then handed out largest
+ * first, each to the shard with the least work so far. Classes without a recorded timing count as the average of
+ * those that have one, or all count the same when there are no timings at all.
+ *
+ * @since 4.2
+ */
+public class TestShards {
+
+  /**
+   * @param classNames fully qualified test class names.
+   * @param timings    seconds per test class from a previous run, may be empty.
+   * @param shardCount the number of shards, at least 1.
+   * @return the target patterns of each shard, index 0 being the first shard.
+   */
+  public static List<List<String>> partition(List<String> classNames, Map<String, Double> timings, int shardCount) {
+    if (shardCount < 1)
+      throw new IllegalArgumentException("shardCount must be at least 1, not " + shardCount);
+
+    double defaultWeight = 1;
+
+    if (!timings.isEmpty()) {
+      double total = 0;
+      for (Double time : timings.values()) {
+        total += time;
+      }
+      defaultWeight = Math.max(total / timings.size(), 0.001);
+    }
+
+    final Map<String, Double> groups = new TreeMap<String, Double>();
+
+    for (String className : classNames) {
+      String targetPattern = GrailsTestSources.toTargetPattern(className);
+      Double weight = timings.get(className);
+      Double sofar = groups.get(targetPattern);
+
+      groups.put(targetPattern, (sofar == null ? 0 : sofar) + (weight == null ? defaultWeight : weight));
+    }
+
+    List<String> targetPatterns = new ArrayList<String>(groups.keySet());
+
+    Collections.sort(targetPatterns, new Comparator<String>() {
+      public int compare(String a, String b) {
+        int byWeight = groups.get(b).compareTo(groups.get(a));
+        return byWeight != 0 ? byWeight : a.compareTo(b);
+      }
+    });
+
+    List<List<String>> shards = new ArrayList<List<String>>();
+    double[] loads = new double[shardCount];
+
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(new ArrayList<String>());
+    }
+
+    for (String targetPattern : targetPatterns) {
+      int lightest = 0;
+
+      for (int i = 1; i < shardCount; i++) {
+        if (loads[i] < loads[lightest])
+          lightest = i;
+      }
+
+      shards.get(lightest).add(targetPattern);
+      loads[lightest] += groups.get(targetPattern);
+    }
+
+    for (List<String> shard : shards) {
+      Collections.sort(shard);
+    }
+
+    return shards;
+  }
+}
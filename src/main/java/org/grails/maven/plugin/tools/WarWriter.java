@@ -0,0 +1,417 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Zips up a staged (exploded) WAR, compressing the entries on several threads at once. Content that is already
+ * compressed - nested jars, images, gzipped files and so on - is stored as it is, compressing it again only costs
+ * time. The manifest is written first, as the JDK's JarInputStream expects.
+ *
+ * Only a bounded number of entries are compressed ahead of the one being written, so memory use stays proportional
+ * to the number of threads rather than the size of the WAR.
+ *
+ * Given a manifest file, the writer also updates a WAR incrementally: the manifest records the path, size, CRC and
+ * last modified time of every entry written, and on the next write entries whose file has the same size and CRC
+ * are copied from the previous WAR as they are, without compressing them again.
+ *
+ * @since 4.2
+ */
+public class WarWriter {
+
+  /**
+   * Extensions of files that are compressed already.
+   */
+  public static final Set<String> STORED_EXTENSIONS = new HashSet<String>(Arrays.asList(
+    "jar", "war", "ear", "zip", "gz", "tgz", "bz2", "xz", "7z",
+    "png", "jpg", "jpeg", "gif", "webp", "ico",
+    "woff", "woff2", "mp3", "mp4", "ogg", "webm", "swf", "pdf"));
+
+  private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+  private final int compressionLevel;
+  private final int threads;
+  private int reusedEntries;
+
+  /**
+   * @param compressionLevel 0 (store everything) to 9, or -1 for the Deflater default.
+   * @param threads          how many entries to compress at once, 0 for one per processor.
+   */
+  public WarWriter(int compressionLevel, int threads) {
+    this.compressionLevel = compressionLevel;
+    this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * @return the number of entries written.
+   */
+  public int write(File stagingDir, File warFile) throws IOException {
+    return write(stagingDir, warFile, null);
+  }
+
+  /**
+   * Writes the WAR, reusing the unchanged entries of the previous one if it was written with the same manifest file.
+   *
+   * @param manifestFile where the entries are recorded, or null to always write every entry.
+   * @return the number of entries written.
+   */
+  public int write(File stagingDir, File warFile, File manifestFile) throws IOException {
+    List<String> names = listEntries(stagingDir);
+    reusedEntries = 0;
+
+    warFile.getAbsoluteFile().getParentFile().mkdirs();
+
+    Map<String, Record> previousRecords = Collections.emptyMap();
+    ZipReader previousWar = null;
+
+    if (manifestFile != null && manifestFile.isFile() && warFile.isFile()) {
+      try {
+        previousRecords = readManifest(manifestFile);
+        previousWar = new ZipReader(warFile);
+      } catch (IOException e) {
+        // not usable, write everything again
+        previousRecords = Collections.emptyMap();
+      }
+    }
+
+    File tempFile = new File(warFile.getPath() + ".tmp");
+    List<Record> records = new ArrayList<Record>(names.size());
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    ZipWriter zip = new ZipWriter(tempFile);
+    boolean written = false;
+
+    try {
+      LinkedList<Future<Entry>> pending = new LinkedList<Future<Entry>>();
+      int next = 0;
+      int window = threads * 4;
+
+      while (next < names.size() || !pending.isEmpty()) {
+        while (next < names.size() && pending.size() < window) {
+          pending.add(executor.submit(new Compress(stagingDir, names.get(next++), previousRecords, previousWar)));
+        }
+
+        Entry entry = pending.removeFirst().get();
+        entry.writeTo(zip, previousWar);
+
+        if (entry.previous != null)
+          reusedEntries++;
+        if (!entry.name.endsWith("/"))
+          records.add(new Record(entry.name, entry.file.length(), entry.crc, entry.file.lastModified()));
+      }
+
+      written = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing " + warFile, e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException("Unable to write " + warFile, e.getCause());
+    } finally {
+      executor.shutdownNow();
+      zip.close();
+
+      if (previousWar != null)
+        previousWar.close();
+
+      if (!written)
+        FileUtils.deleteQuietly(tempFile);
+    }
+
+    if (manifestFile != null)
+      FileUtils.deleteQuietly(manifestFile);
+
+    FileUtils.deleteQuietly(warFile);
+    if (!tempFile.renameTo(warFile))
+      throw new IOException("Unable to rename " + tempFile + " to " + warFile);
+
+    if (manifestFile != null)
+      writeManifest(manifestFile, records);
+
+    return names.size();
+  }
+
+  /**
+   * @return how many entries the last write copied from the previous WAR.
+   */
+  public int getReusedEntries() {
+    return reusedEntries;
+  }
+
+  /**
+   * The entry names, directories ending in /, with the manifest first and everything else in path order.
+   */
+  public static List<String> listEntries(File stagingDir) {
+    List<String> names = new ArrayList<String>();
+    File manifest = new File(stagingDir, MANIFEST);
+
+    if (manifest.isFile()) {
+      names.add("META-INF/");
+      names.add(MANIFEST);
+    }
+
+    listEntries(stagingDir, "", names);
+
+    return names;
+  }
+
+  private static void listEntries(File dir, String prefix, List<String> names) {
+    File[] files = dir.listFiles();
+
+    if (files == null) return;
+
+    Arrays.sort(files);
+
+    for (File file : files) {
+      String name = prefix + file.getName();
+
+      if (file.isDirectory()) {
+        // META-INF/ is already there when there is a manifest
+        if (!(name.equals("META-INF") && new File(file, "MANIFEST.MF").isFile()))
+          names.add(name + "/");
+        listEntries(file, name + "/", names);
+      } else if (!name.equals(MANIFEST)) {
+        names.add(name);
+      }
+    }
+  }
+
+  public static boolean isCompressed(String name) {
+    int dot = name.lastIndexOf('.');
+
+    return dot >= 0 && STORED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase());
+  }
+
+  private Map<String, Record> readManifest(File manifestFile) throws IOException {
+    Map<String, Record> records = new HashMap<String, Record>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), "UTF-8"));
+
+    try {
+      String line = reader.readLine();
+
+      // entries compressed at another level are not reused
+      if (line == null || !line.equals("level\t" + compressionLevel))
+        return records;
+
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split("\t", 4);
+
+        if (parts.length != 4)
+          throw new IOException("Corrupt WAR manifest " + manifestFile);
+
+        try {
+          records.put(parts[3], new Record(parts[3], Long.parseLong(parts[1]), Long.parseLong(parts[0], 16), Long.parseLong(parts[2])));
+        } catch (NumberFormatException e) {
+          throw new IOException("Corrupt WAR manifest " + manifestFile, e);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+
+    return records;
+  }
+
+  private void writeManifest(File manifestFile, List<Record> records) throws IOException {
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(manifestFile), "UTF-8"));
+
+    try {
+      writer.print("level\t" + compressionLevel + "\n");
+
+      for (Record record : records) {
+        writer.print(Long.toHexString(record.crc) + "\t" + record.size + "\t" + record.lastModified + "\t" + record.name + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+
+    if (writer.checkError())
+      throw new IOException("Unable to write " + manifestFile);
+  }
+
+  private class Compress implements Callable<Entry> {
+    private final File stagingDir;
+    private final String name;
+    private final Map<String, Record> previousRecords;
+    private final ZipReader previousWar;
+
+    Compress(File stagingDir, String name, Map<String, Record> previousRecords, ZipReader previousWar) {
+      this.stagingDir = stagingDir;
+      this.name = name;
+      this.previousRecords = previousRecords;
+      this.previousWar = previousWar;
+    }
+
+    public Entry call() throws IOException {
+      File file = new File(stagingDir, name);
+      Entry entry = new Entry(name, file);
+
+      if (name.endsWith("/"))
+        return entry;
+
+      Record record = previousRecords.get(name);
+      ZipReader.Entry previous = record == null ? null : previousWar.getEntries().get(name);
+
+      if (previous != null && previous.crc == record.crc && previous.size == record.size && file.length() == record.size) {
+        // the same size and last modified time is taken to mean the same content, as make does
+        long crc = file.lastModified() == record.lastModified ? record.crc : crcOf(file);
+
+        if (crc == record.crc) {
+          entry.crc = crc;
+          entry.previous = previous;
+          return entry;
+        }
+      }
+
+      if (compressionLevel == 0 || isCompressed(name)) {
+        // stored straight from the file by the writer, only the CRC is needed up front
+        entry.crc = crcOf(file);
+        return entry;
+      }
+
+      byte[] content = FileUtils.readFileToByteArray(file);
+      CRC32 crc = new CRC32();
+      crc.update(content);
+      entry.crc = crc.getValue();
+
+      byte[] deflated = deflate(content);
+
+      if (deflated.length < content.length) {
+        entry.method = ZipWriter.DEFLATED;
+        entry.data = deflated;
+      } else {
+        entry.data = content;
+      }
+
+      return entry;
+    }
+
+    private byte[] deflate(byte[] content) {
+      Deflater deflater = new Deflater(compressionLevel, true);
+
+      try {
+        deflater.setInput(content);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+        byte[] buffer = new byte[65536];
+
+        while (!deflater.finished()) {
+          out.write(buffer, 0, deflater.deflate(buffer));
+        }
+
+        return out.toByteArray();
+      } finally {
+        deflater.end();
+      }
+    }
+  }
+
+  private static long crcOf(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    InputStream in = new FileInputStream(file);
+
+    try {
+      byte[] buffer = new byte[65536];
+      int read;
+
+      while ((read = in.read(buffer)) >= 0) {
+        crc.update(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+
+    return crc.getValue();
+  }
+
+  private static class Entry {
+    final String name;
+    final File file;
+    int method = ZipWriter.STORED;
+    long crc;
+    byte[] data;
+    ZipReader.Entry previous;
+
+    Entry(String name, File file) {
+      this.name = name;
+      this.file = file;
+    }
+
+    void writeTo(ZipWriter zip, ZipReader previousWar) throws IOException {
+      if (name.endsWith("/")) {
+        zip.addDirectory(name, file.lastModified());
+      } else if (previous != null) {
+        InputStream in = previousWar.openStoredData(previous);
+        try {
+          zip.addEntry(name, previous.method, previous.dosTime, previous.crc, previous.compressedSize, previous.size, in);
+        } finally {
+          in.close();
+        }
+      } else if (data != null) {
+        zip.addEntry(name, method, ZipWriter.toDosTime(file.lastModified()), crc, file.length(), data);
+      } else {
+        InputStream in = new FileInputStream(file);
+        try {
+          zip.addEntry(name, ZipWriter.STORED, ZipWriter.toDosTime(file.lastModified()), crc, file.length(), file.length(), in);
+        } finally {
+          in.close();
+        }
+      }
+    }
+  }
+
+  private static class Record {
+    final String name;
+    final long size;
+    final long crc;
+    final long lastModified;
+
+    Record(String name, long size, long crc, long lastModified) {
+      this.name = name;
+      this.size = size;
+      this.crc = crc;
+      this.lastModified = lastModified;
+    }
+  }
+}
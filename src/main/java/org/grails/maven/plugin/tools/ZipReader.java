@@ -0,0 +1,200 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the central directory of a zip file and gives access to the entries' stored data as it is - still
+ * deflated for DEFLATED entries - so that they can be copied into another zip with {@link ZipWriter} without
+ * decompressing them. Like ZipWriter it does not support Zip64.
+ *
+ * @since 4.2
+ */
+public class ZipReader {
+
+  private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+  private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int UTF8_FLAG = 0x0800;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final Charset CP437 = Charset.forName("IBM437");
+
+  private final File file;
+  private final RandomAccessFile randomAccessFile;
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+  public ZipReader(File file) throws IOException {
+    this.file = file;
+    this.randomAccessFile = new RandomAccessFile(file, "r");
+
+    try {
+      readCentralDirectory();
+    } catch (IOException e) {
+      randomAccessFile.close();
+      throw e;
+    } catch (RuntimeException e) {
+      randomAccessFile.close();
+      throw new IOException(file + " is not a valid zip file", e);
+    }
+  }
+
+  /**
+   * @return the entries by name, in the order of the central directory.
+   */
+  public Map<String, Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Opens the stored data of an entry. Only one entry can be read at a time.
+   */
+  public InputStream openStoredData(Entry entry) throws IOException {
+    FileChannel channel = randomAccessFile.getChannel();
+
+    ByteBuffer header = read(channel, entry.localHeaderOffset, 30);
+
+    if (header.getInt(0) != LOCAL_HEADER)
+      throw new IOException("No local header for " + entry.name + " in " + file);
+
+    long dataOffset = entry.localHeaderOffset + 30 + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+
+    channel.position(dataOffset);
+
+    // the stream must not close the shared channel
+    final InputStream in = Channels.newInputStream(channel);
+    return new InputStream() {
+      @Override
+      public int read() throws IOException {
+        return in.read();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return in.read(b, off, len);
+      }
+    };
+  }
+
+  public void close() throws IOException {
+    randomAccessFile.close();
+  }
+
+  private void readCentralDirectory() throws IOException {
+    long length = randomAccessFile.length();
+
+    // the end of central directory record is 22 bytes, followed by a comment of up to 65535 bytes
+    int tailLength = (int) Math.min(length, 22 + 0xffff);
+    FileChannel channel = randomAccessFile.getChannel();
+    ByteBuffer tail = read(channel, length - tailLength, tailLength);
+
+    int end = -1;
+    for (int i = tailLength - 22; i >= 0; i--) {
+      if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+        end = i;
+        break;
+      }
+    }
+
+    if (end < 0)
+      throw new IOException(file + " is not a zip file");
+
+    int count = tail.getShort(end + 10) & 0xffff;
+    long size = tail.getInt(end + 12) & 0xffffffffL;
+    long offset = tail.getInt(end + 16) & 0xffffffffL;
+
+    if (offset + size > length)
+      throw new IOException(file + " is truncated or needs Zip64, which is not supported");
+
+    ByteBuffer directory = read(channel, offset, (int) size);
+
+    for (int i = 0; i < count; i++) {
+      if (directory.getInt() != CENTRAL_DIRECTORY_ENTRY)
+        throw new IOException("Corrupt central directory in " + file);
+
+      directory.getShort(); // made by
+      directory.getShort(); // version needed
+      int flags = directory.getShort() & 0xffff;
+      int method = directory.getShort() & 0xffff;
+      long dosTime = directory.getInt() & 0xffffffffL;
+      long crc = directory.getInt() & 0xffffffffL;
+      long compressedSize = directory.getInt() & 0xffffffffL;
+      long uncompressedSize = directory.getInt() & 0xffffffffL;
+      int nameLength = directory.getShort() & 0xffff;
+      int extraLength = directory.getShort() & 0xffff;
+      int commentLength = directory.getShort() & 0xffff;
+      directory.getShort(); // disk number
+      directory.getShort(); // internal attributes
+      directory.getInt(); // external attributes
+      long localHeaderOffset = directory.getInt() & 0xffffffffL;
+
+      byte[] name = new byte[nameLength];
+      directory.get(name);
+      directory.position(directory.position() + extraLength + commentLength);
+
+      Entry entry = new Entry(new String(name, (flags & UTF8_FLAG) != 0 ? UTF8 : CP437), method, dosTime, crc,
+        compressedSize, uncompressedSize, localHeaderOffset);
+      entries.put(entry.name, entry);
+    }
+  }
+
+  /**
+   * Reads part of the file into a heap buffer. A mapped buffer would keep the file open, and so undeletable on
+   * Windows, until it is garbage collected.
+   */
+  private ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0)
+        throw new IOException(file + " is truncated");
+    }
+
+    buffer.flip();
+
+    return buffer;
+  }
+
+  public static class Entry {
+    public final String name;
+    public final int method;
+    public final long dosTime;
+    public final long crc;
+    public final long compressedSize;
+    public final long size;
+    final long localHeaderOffset;
+
+    Entry(String name, int method, long dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+      this.name = name;
+      this.method = method;
+      this.dosTime = dosTime;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+  }
+}
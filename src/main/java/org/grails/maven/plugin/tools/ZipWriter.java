@@ -0,0 +1,214 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.grails.maven.plugin.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+
+/**
+ * Writes a zip file from entries whose CRC and sizes are already known, with the data as it is to be stored -
+ * already deflated for DEFLATED entries. That lets callers compress entries on other threads, or copy entries
+ * from another zip without decompressing and recompressing them, which java.util.zip.ZipOutputStream cannot do.
+ *
+ * Zip64 is not supported: more than 65535 entries or anything over 4GB is refused with an IOException.
+ *
+ * @since 4.2
+ */
+public class ZipWriter {
+
+  public static final int STORED = 0;
+  public static final int DEFLATED = 8;
+
+  private static final long MAX_32 = 0xFFFFFFFFL;
+  private static final int MAX_ENTRIES = 0xFFFF;
+  private static final int UTF8_FLAG = 0x0800;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final File file;
+  private final CountingOutputStream out;
+  private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+  private int entries;
+
+  public ZipWriter(File file) throws IOException {
+    this.file = file;
+    this.out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+  }
+
+  public void addDirectory(String name, long lastModified) throws IOException {
+    writeHeaders(name.endsWith("/") ? name : name + "/", STORED, toDosTime(lastModified), 0, 0, 0);
+  }
+
+  /**
+   * Adds an entry whose stored data is in memory.
+   *
+   * @param data the data as stored, deflated (raw, without zlib header) if the method is DEFLATED.
+   */
+  public void addEntry(String name, int method, long dosTime, long crc, long size, byte[] data) throws IOException {
+    writeHeaders(name, method, dosTime, crc, data.length, size);
+    out.write(data);
+  }
+
+  /**
+   * Adds an entry, copying exactly compressedSize bytes of stored data from the stream.
+   */
+  public void addEntry(String name, int method, long dosTime, long crc, long compressedSize, long size, InputStream data) throws IOException {
+    writeHeaders(name, method, dosTime, crc, compressedSize, size);
+
+    byte[] buffer = new byte[65536];
+    long remaining = compressedSize;
+
+    while (remaining > 0) {
+      int read = data.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      if (read < 0)
+        throw new IOException("Unexpected end of data for " + name + " in " + file);
+      out.write(buffer, 0, read);
+      remaining -= read;
+    }
+  }
+
+  public void close() throws IOException {
+    try {
+      long centralDirectoryOffset = out.count;
+      centralDirectory.writeTo(out);
+
+      checkLimit(out.count, "the central directory offset");
+
+      writeInt(out, 0x06054b50);
+      writeShort(out, 0); // this disk
+      writeShort(out, 0); // disk with the central directory
+      writeShort(out, entries);
+      writeShort(out, entries);
+      writeInt(out, centralDirectory.size());
+      writeInt(out, centralDirectoryOffset);
+      writeShort(out, 0); // comment length
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeHeaders(String name, int method, long dosTime, long crc, long compressedSize, long size) throws IOException {
+    if (++entries > MAX_ENTRIES)
+      throw new IOException(file + " would need more than " + MAX_ENTRIES + " entries, which needs Zip64 and is not supported");
+
+    long offset = out.count;
+
+    checkLimit(offset, name);
+    checkLimit(compressedSize, name);
+    checkLimit(size, name);
+
+    byte[] nameBytes = name.getBytes(UTF8);
+    int version = method == DEFLATED ? 20 : 10;
+
+    writeInt(out, 0x04034b50);
+    writeShort(out, version);
+    writeShort(out, UTF8_FLAG);
+    writeShort(out, method);
+    writeInt(out, dosTime);
+    writeInt(out, crc);
+    writeInt(out, compressedSize);
+    writeInt(out, size);
+    writeShort(out, nameBytes.length);
+    writeShort(out, 0); // extra field length
+    out.write(nameBytes);
+
+    writeInt(centralDirectory, 0x02014b50);
+    writeShort(centralDirectory, 20); // made by
+    writeShort(centralDirectory, version);
+    writeShort(centralDirectory, UTF8_FLAG);
+    writeShort(centralDirectory, method);
+    writeInt(centralDirectory, dosTime);
+    writeInt(centralDirectory, crc);
+    writeInt(centralDirectory, compressedSize);
+    writeInt(centralDirectory, size);
+    writeShort(centralDirectory, nameBytes.length);
+    writeShort(centralDirectory, 0); // extra field length
+    writeShort(centralDirectory, 0); // comment length
+    writeShort(centralDirectory, 0); // disk number
+    writeShort(centralDirectory, 0); // internal attributes
+    writeInt(centralDirectory, name.endsWith("/") ? 0x10 : 0); // external attributes, MS-DOS directory flag
+    writeInt(centralDirectory, offset);
+    centralDirectory.write(nameBytes);
+  }
+
+  private void checkLimit(long value, String what) throws IOException {
+    if (value >= MAX_32)
+      throw new IOException(file + " would be larger than 4GB at " + what + ", which needs Zip64 and is not supported");
+  }
+
+  /**
+   * Converts a Java time to the MS-DOS date and time zip files use.
+   */
+  public static long toDosTime(long time) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(time);
+
+    int year = calendar.get(Calendar.YEAR);
+    if (year < 1980)
+      return (1 << 21) | (1 << 16); // 1980-01-01
+
+    return ((long) (year - 1980) << 25) | ((long) (calendar.get(Calendar.MONTH) + 1) << 21) |
+      ((long) calendar.get(Calendar.DAY_OF_MONTH) << 16) | ((long) calendar.get(Calendar.HOUR_OF_DAY) << 11) |
+      ((long) calendar.get(Calendar.MINUTE) << 5) | ((long) calendar.get(Calendar.SECOND) >> 1);
+  }
+
+  private static void writeShort(OutputStream out, int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >> 8) & 0xff);
+  }
+
+  private static void writeInt(OutputStream out, long value) throws IOException {
+    writeShort(out, (int) (value & 0xffff));
+    writeShort(out, (int) ((value >> 16) & 0xffff));
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+    private final OutputStream out;
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+}
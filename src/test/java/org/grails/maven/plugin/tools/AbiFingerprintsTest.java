@@ -0,0 +1,94 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.grails.maven.plugin.tools;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+
+/**
+ * Tests the ABI fingerprints of jars and class directories compiled by javac.
+ */
+public class AbiFingerprintsTest extends TestCase {
+
+    private File dir;
+
+    protected void setUp() throws Exception {
+        dir = ClassFiles.newTempDir();
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testJarAndDirectoryAgree() throws IOException {
+        File classes = compile("v1", "public String title() { return \"a\"; }");
+        File jar = new File(dir, "v1.jar");
+        ClassFiles.jar(classes, jar);
+
+        AbiFingerprints fingerprints = new AbiFingerprints(new File(dir, "abi"));
+
+        assertEquals(fingerprints.of(classes), fingerprints.of(jar));
+        assertEquals(new TreeSet<String>(Arrays.asList("com/acme/Book", "com/acme/Helper")), AbiFingerprints.classesIn(jar));
+        assertEquals(AbiFingerprints.classesIn(jar), AbiFingerprints.classesIn(classes));
+    }
+
+    public void testImplementationChangeKeepsFingerprint() throws IOException {
+        AbiFingerprints fingerprints = new AbiFingerprints(new File(dir, "abi"));
+
+        assertEquals(fingerprints.of(compile("v1", "public String title() { return \"a\"; }")),
+            fingerprints.of(compile("v2", "public String title() { return \"b\" + pages(); } private int pages() { return 1; }")));
+    }
+
+    public void testSignatureChangeChangesFingerprint() throws IOException {
+        AbiFingerprints fingerprints = new AbiFingerprints(new File(dir, "abi"));
+
+        assertFalse(fingerprints.of(compile("v1", "public String title() { return \"a\"; }"))
+            .equals(fingerprints.of(compile("v2", "public String title(int edition) { return \"a\"; }"))));
+    }
+
+    public void testJarFingerprintsAreCached() throws IOException {
+        File jar = new File(dir, "v1.jar");
+        ClassFiles.jar(compile("v1", "public String title() { return \"a\"; }"), jar);
+        File cacheFile = new File(dir, "abi");
+
+        AbiFingerprints fingerprints = new AbiFingerprints(cacheFile);
+        String fingerprint = fingerprints.of(jar);
+        fingerprints.save();
+
+        assertTrue(FileUtils.readFileToString(cacheFile, "UTF-8").startsWith(fingerprint + "\t" + jar.getAbsolutePath() + "|"));
+        assertEquals(fingerprint, new AbiFingerprints(cacheFile).of(jar));
+
+        // the cache is by size and time, a jar rewritten in place is read again
+        ClassFiles.jar(compile("v2", "public String title(int edition) { return \"a\"; }"), jar);
+        jar.setLastModified(jar.lastModified() + 2000);
+
+        assertFalse(fingerprint.equals(new AbiFingerprints(cacheFile).of(jar)));
+    }
+
+    private File compile(String version, String bookMembers) throws IOException {
+        File classes = new File(dir, version);
+        ClassFiles.compile(new File(dir, version + "-src"), Collections.singletonMap("com/acme/Book.java",
+            "package com.acme; public class Book { " + bookMembers + " }\nclass Helper {}"), classes, null);
+        return classes;
+    }
+}
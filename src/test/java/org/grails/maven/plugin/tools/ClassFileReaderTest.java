@@ -0,0 +1,111 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.grails.maven.plugin.tools;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests reading class files compiled by javac.
+ */
+public class ClassFileReaderTest extends TestCase {
+
+    private File dir;
+
+    protected void setUp() throws Exception {
+        dir = ClassFiles.newTempDir();
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testNamesSourceAndReferences() throws IOException {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("com/acme/Author.java", "package com.acme; public class Author {}");
+        sources.put("com/acme/Shelf.java", "package com.acme; public class Shelf {}");
+        sources.put("com/acme/Book.java", "package com.acme; public class Book extends Shelf {\n" +
+            "  private Author author;\n" +
+            "  public java.util.List<Author> coAuthors() { return null; }\n" +
+            "}");
+
+        ClassFileReader book = read(sources, "com/acme/Book");
+
+        assertEquals("com/acme/Book", book.getClassName());
+        assertEquals("com/acme/Shelf", book.getSuperName());
+        assertEquals("Book.java", book.getSourceFile());
+        assertTrue(book.getReferencedClasses().contains("com/acme/Author"));
+        assertTrue(book.getReferencedClasses().contains("com/acme/Shelf"));
+        assertTrue(book.getReferencedClasses().contains("java/util/List"));
+        assertFalse(book.getReferencedClasses().contains("com/acme/Book"));
+    }
+
+    public void testAbiLeavesOutPrivateMembersAndCode() throws IOException {
+        String first = abi("public class Book { private int pages; public String title() { return \"a\"; } }");
+        String second = abi("public class Book { private long isbn; public String title() { return \"b\" + isbn; } void shelve() {} }");
+
+        assertEquals(first, second);
+    }
+
+    public void testAbiHasSignaturesAndConstants() throws IOException {
+        String book = abi("public class Book { public String title() { return null; } }");
+
+        assertFalse(book.equals(abi("public class Book { public String title(int edition) { return null; } }")));
+        assertFalse(book.equals(abi("public class Book { protected String title() { return null; } }")));
+        assertFalse(book.equals(abi("public class Book { public String title() throws java.io.IOException { return null; } }")));
+
+        String constant = abi("public class Book { public static final int PAGES = 1; }");
+        assertFalse(constant.equals(abi("public class Book { public static final int PAGES = 2; }")));
+    }
+
+    public void testPackagePrivateClassHasNoAbi() throws IOException {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("Book.java", "class Book { public String title() { return null; } }");
+
+        assertNull(read(sources, "Book").getAbi());
+    }
+
+    private String abi(String source) throws IOException {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("Book.java", source);
+
+        String abi = read(sources, "Book").getAbi();
+        assertNotNull(abi);
+
+        return abi;
+    }
+
+    private ClassFileReader read(Map<String, String> sources, String className) throws IOException {
+        File classesDir = new File(dir, "classes");
+        FileUtils.deleteDirectory(classesDir);
+        ClassFiles.compile(new File(dir, "src"), sources, classesDir, null);
+
+        InputStream in = new FileInputStream(new File(classesDir, className + ".class"));
+        try {
+            return ClassFileReader.read(in);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.grails.maven.plugin.tools;
+
+import org.apache.commons.io.FileUtils;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compiles sources into real class files for the tests that read them.
+ */
+class ClassFiles {
+
+    static File newTempDir() throws IOException {
+        File dir = File.createTempFile("class-files", "");
+        if (!dir.delete() || !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+        return dir;
+    }
+
+    /**
+     * @param sourceDir where the sources are written, e.g. src/java of a project.
+     * @param sources   path below the source directory (com/acme/Book.java) to its text.
+     * @param classesDir where the classes are compiled to.
+     * @param classpath  classes the sources are compiled against, or null.
+     */
+    static void compile(File sourceDir, Map<String, String> sources, File classesDir, File classpath) throws IOException {
+        List<String> arguments = new ArrayList<String>();
+        arguments.add("-d");
+        arguments.add(classesDir.getAbsolutePath());
+        if (classpath != null) {
+            arguments.add("-classpath");
+            arguments.add(classpath.getAbsolutePath());
+        }
+
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            File file = new File(sourceDir, source.getKey());
+            FileUtils.writeStringToFile(file, source.getValue(), "UTF-8");
+            arguments.add(file.getAbsolutePath());
+        }
+
+        classesDir.mkdirs();
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler.run(null, null, null, arguments.toArray(new String[arguments.size()])) != 0)
+            throw new IOException("Unable to compile " + sources.keySet());
+    }
+
+    /**
+     * Jars up a directory of classes.
+     */
+    static void jar(File classesDir, File jarFile) throws IOException {
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            for (File file : FileUtils.listFiles(classesDir, null, true)) {
+                String name = file.getAbsolutePath().substring(classesDir.getAbsolutePath().length() + 1);
+                out.putNextEntry(new ZipEntry(name.replace(File.separatorChar, '/')));
+                FileUtils.copyFile(file, out);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
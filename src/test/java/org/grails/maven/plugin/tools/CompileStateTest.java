@@ -0,0 +1,128 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.grails.maven.plugin.tools;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Tests the compile state against classes compiled by javac.
+ */
+public class CompileStateTest extends TestCase {
+
+    private static final String LIBRARY = "org.acme:library:jar:";
+
+    private File basedir;
+    private File classesDir;
+    private List<File> sourceRoots;
+    private Map<String, String> sourceHashes;
+
+    protected void setUp() throws Exception {
+        basedir = ClassFiles.newTempDir();
+        classesDir = new File(basedir, "target/classes");
+
+        Map<String, String> library = new HashMap<String, String>();
+        library.put("org/acme/Widget.java", "package org.acme; public class Widget {}");
+        library.put("org/acme/Gadget.java", "package org.acme; public class Gadget {}");
+        ClassFiles.compile(new File(basedir, "library/src"), library, new File(basedir, "library/classes"), null);
+
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("com/acme/Author.java", "package com.acme; public class Author {}");
+        sources.put("com/acme/Book.java", "package com.acme; public class Book {\n" +
+            "  Author author;\n" +
+            "  Runnable reader = new Runnable() { public void run() {} };\n" +
+            "}");
+        sources.put("com/acme/Shelf.java", "package com.acme; public class Shelf { org.acme.Widget widget; }");
+        ClassFiles.compile(new File(basedir, "src/java"), sources, classesDir, new File(basedir, "library/classes"));
+
+        sourceRoots = CompileState.sourceRoots(basedir);
+        sourceHashes = CompileState.hashSources(basedir, sourceRoots);
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(basedir);
+    }
+
+    public void testScanMapsClassesToSources() throws IOException {
+        CompileState state = CompileState.scan(basedir, sourceRoots, sourceHashes, classesDir, "fingerprint");
+
+        assertEquals(new TreeSet<String>(Arrays.asList("src/java/com/acme/Author.java", "src/java/com/acme/Book.java",
+            "src/java/com/acme/Shelf.java")), state.getSourceHashes().keySet());
+        assertEquals("src/java/com/acme/Book.java", state.getClassSources().get("com/acme/Book"));
+        assertEquals("src/java/com/acme/Book.java", state.getClassSources().get("com/acme/Book$1"));
+        assertEquals("src/java/com/acme/Shelf.java", state.getClassSources().get("com/acme/Shelf"));
+    }
+
+    public void testChangedSourceMakesItsUsersStale() throws IOException {
+        CompileState state = CompileState.scan(basedir, sourceRoots, sourceHashes, classesDir, "fingerprint");
+
+        assertTrue(state.staleClasses(sourceHashes).isEmpty());
+
+        Map<String, String> changed = new HashMap<String, String>(sourceHashes);
+        changed.put("src/java/com/acme/Author.java", "changed");
+
+        assertEquals(new TreeSet<String>(Arrays.asList("com/acme/Author", "com/acme/Book", "com/acme/Book$1")),
+            state.staleClasses(changed));
+
+        Map<String, String> deleted = new HashMap<String, String>(sourceHashes);
+        deleted.remove("src/java/com/acme/Shelf.java");
+
+        assertEquals(Collections.singleton("com/acme/Shelf"), state.staleClasses(deleted));
+    }
+
+    public void testDependencyClassesKeepOnlyThoseReferredTo() throws IOException {
+        CompileState state = CompileState.scan(basedir, sourceRoots, sourceHashes, classesDir, "fingerprint");
+        state.setDependencyClasses(Collections.singletonMap(LIBRARY, AbiFingerprints.classesIn(new File(basedir, "library/classes"))));
+
+        assertEquals(Collections.singleton("org/acme/Widget"), state.getDependencyClasses().get(LIBRARY));
+        assertEquals(Collections.singleton("com/acme/Shelf"), state.dependentClasses(state.getDependencyClasses().get(LIBRARY)));
+    }
+
+    public void testSaveAndLoad() throws IOException {
+        CompileState state = CompileState.scan(basedir, sourceRoots, sourceHashes, classesDir, "fingerprint");
+        state.setAbiFingerprints(Collections.singletonMap(LIBRARY, "abi"));
+        state.setDependencyClasses(Collections.singletonMap(LIBRARY, AbiFingerprints.classesIn(new File(basedir, "library/classes"))));
+
+        File stateFile = new File(basedir, "target/grails-compile/state");
+        state.save(stateFile);
+        CompileState loaded = CompileState.load(stateFile);
+
+        assertEquals("fingerprint", loaded.getClasspathFingerprint());
+        assertEquals(state.getSourceHashes(), loaded.getSourceHashes());
+        assertEquals(state.getClassSources(), loaded.getClassSources());
+        assertEquals(state.getAbiFingerprints(), loaded.getAbiFingerprints());
+        assertEquals(state.getDependencyClasses(), loaded.getDependencyClasses());
+
+        Set<String> widgetUsers = loaded.dependentClasses(Collections.singleton("org/acme/Widget"));
+        assertEquals(Collections.singleton("com/acme/Shelf"), widgetUsers);
+    }
+
+    public void testNoStateWithoutFile() {
+        assertNull(CompileState.load(new File(basedir, "missing")));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.grails.maven.plugin.tools;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the test class sharding.
+ */
+public class TestShardsTest extends TestCase {
+
+    private List<String> classNames = Arrays.asList("a.BookSpec", "a.BookTests", "a.AuthorSpec", "b.ShelfTests",
+        "b.LoanSpec", "c.ReaderTests");
+
+    public void testShardsAreDisjointAndComplete() {
+        List<List<String>> shards = TestShards.partition(classNames, Collections.<String, Double>emptyMap(), 3);
+
+        List<String> all = new ArrayList<String>();
+        for (List<String> shard : shards) {
+            all.addAll(shard);
+        }
+        Collections.sort(all);
+
+        // BookSpec and BookTests share the a.Book pattern, so they always end up together
+        assertEquals(Arrays.asList("a.Author", "a.Book", "b.Loan", "b.Shelf", "c.Reader"), all);
+    }
+
+    public void testSameShardsWhateverTheInputOrder() {
+        List<String> reversed = new ArrayList<String>(classNames);
+        Collections.reverse(reversed);
+
+        assertEquals(TestShards.partition(classNames, Collections.<String, Double>emptyMap(), 4),
+            TestShards.partition(reversed, Collections.<String, Double>emptyMap(), 4));
+    }
+
+    public void testTimingsBalanceShards() {
+        Map<String, Double> timings = new HashMap<String, Double>();
+        timings.put("a.BookSpec", 60.0);
+        timings.put("a.AuthorSpec", 20.0);
+        timings.put("b.ShelfTests", 20.0);
+        timings.put("b.LoanSpec", 20.0);
+
+        List<List<String>> shards = TestShards.partition(classNames, timings, 2);
+
+        // BookTests and ReaderTests have no timing, so count as the 30s average: 90s of Book tests against the rest
+        assertEquals(Arrays.asList("a.Book"), shards.get(0));
+        assertEquals(Arrays.asList("a.Author", "b.Loan", "b.Shelf", "c.Reader"), shards.get(1));
+    }
+}
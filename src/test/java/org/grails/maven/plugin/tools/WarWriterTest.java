@@ -0,0 +1,129 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.grails.maven.plugin.tools;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Tests writing a WAR from a staging directory, and updating it incrementally.
+ */
+public class WarWriterTest extends TestCase {
+
+    private File dir;
+    private File staging;
+    private File war;
+    private File manifest;
+
+    protected void setUp() throws Exception {
+        dir = ClassFiles.newTempDir();
+        staging = new File(dir, "staging");
+        war = new File(dir, "app.war");
+        manifest = new File(dir, "app.war.entries");
+
+        write("index.gsp", "<html>index, index, index, index</html>");
+        write("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n");
+        write("WEB-INF/lib/library.jar", "pretend this is a jar");
+        write("WEB-INF/classes/messages_ja.properties", "greeting=\u3053\u3093\u306b\u3061\u306f");
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testWritesEveryEntryManifestFirst() throws IOException {
+        assertEquals(8, new WarWriter(6, 2).write(staging, war));
+
+        ZipFile zip = new ZipFile(war);
+        try {
+            assertEquals(Arrays.asList("META-INF/", "META-INF/MANIFEST.MF", "WEB-INF/", "WEB-INF/classes/",
+                "WEB-INF/classes/messages_ja.properties", "WEB-INF/lib/", "WEB-INF/lib/library.jar", "index.gsp"),
+                ZipWriterTest.names(zip));
+
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("index.gsp").getMethod());
+            assertEquals(ZipEntry.STORED, zip.getEntry("WEB-INF/lib/library.jar").getMethod());
+
+            assertContent(zip);
+        } finally {
+            zip.close();
+        }
+    }
+
+    public void testStoresEverythingAtLevelZero() throws IOException {
+        new WarWriter(0, 1).write(staging, war);
+
+        ZipFile zip = new ZipFile(war);
+        try {
+            assertEquals(ZipEntry.STORED, zip.getEntry("index.gsp").getMethod());
+            assertContent(zip);
+        } finally {
+            zip.close();
+        }
+    }
+
+    public void testReusesUnchangedEntries() throws IOException {
+        WarWriter writer = new WarWriter(6, 2);
+
+        writer.write(staging, war, manifest);
+        assertEquals(0, writer.getReusedEntries());
+
+        writer.write(staging, war, manifest);
+        assertEquals(4, writer.getReusedEntries());
+
+        File index = write("index.gsp", "<html>changed, changed, changed</html>");
+        index.setLastModified(index.lastModified() + 2000);
+
+        writer.write(staging, war, manifest);
+        assertEquals(3, writer.getReusedEntries());
+
+        ZipFile zip = new ZipFile(war);
+        try {
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("index.gsp").getMethod());
+            assertContent(zip);
+        } finally {
+            zip.close();
+        }
+    }
+
+    public void testNothingIsReusedAtAnotherLevel() throws IOException {
+        new WarWriter(6, 2).write(staging, war, manifest);
+
+        WarWriter writer = new WarWriter(0, 2);
+        writer.write(staging, war, manifest);
+
+        assertEquals(0, writer.getReusedEntries());
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(staging, name);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+        return file;
+    }
+
+    private void assertContent(ZipFile zip) throws IOException {
+        for (String name : Arrays.asList("index.gsp", "META-INF/MANIFEST.MF", "WEB-INF/lib/library.jar",
+            "WEB-INF/classes/messages_ja.properties")) {
+            assertTrue(name, Arrays.equals(FileUtils.readFileToByteArray(new File(staging, name)), ZipWriterTest.read(zip, name)));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.grails.maven.plugin.tools;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests reading zips written by java.util.zip, and copying their entries with ZipWriter.
+ */
+public class ZipReaderTest extends TestCase {
+
+    private File source;
+    private File copy;
+
+    private byte[] stored;
+    private byte[] deflated;
+
+    protected void setUp() throws Exception {
+        source = File.createTempFile("zip-reader", ".zip");
+        copy = File.createTempFile("zip-reader-copy", ".zip");
+
+        stored = ZipWriterTest.bytes("stored content");
+        deflated = ZipWriterTest.bytes("deflated content, deflated content, deflated content");
+
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(source));
+        try {
+            ZipEntry storedEntry = new ZipEntry("stored/Gr\u00fc\u00dfe.txt");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            storedEntry.setCrc(ZipWriterTest.crc(stored));
+            out.putNextEntry(storedEntry);
+            out.write(stored);
+
+            out.putNextEntry(new ZipEntry("deflated.txt"));
+            out.write(deflated);
+        } finally {
+            out.close();
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteQuietly(source);
+        FileUtils.deleteQuietly(copy);
+    }
+
+    public void testReadsTheCentralDirectory() throws IOException {
+        ZipReader reader = new ZipReader(source);
+
+        try {
+            assertEquals(Arrays.asList("stored/Gr\u00fc\u00dfe.txt", "deflated.txt"), new ArrayList<String>(reader.getEntries().keySet()));
+
+            ZipReader.Entry storedEntry = reader.getEntries().get("stored/Gr\u00fc\u00dfe.txt");
+            assertEquals(ZipWriter.STORED, storedEntry.method);
+            assertEquals(stored.length, storedEntry.size);
+            assertEquals(ZipWriterTest.crc(stored), storedEntry.crc);
+            assertTrue(Arrays.equals(stored, storedData(reader, storedEntry)));
+
+            ZipReader.Entry deflatedEntry = reader.getEntries().get("deflated.txt");
+            assertEquals(ZipWriter.DEFLATED, deflatedEntry.method);
+            assertEquals(deflated.length, deflatedEntry.size);
+            assertEquals(ZipWriterTest.crc(deflated), deflatedEntry.crc);
+
+            InputStream in = new InflaterInputStream(reader.openStoredData(deflatedEntry), new Inflater(true));
+            try {
+                assertTrue(Arrays.equals(deflated, IOUtils.toByteArray(in)));
+            } finally {
+                in.close();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testCopiesEntriesWithoutRecompressing() throws IOException {
+        ZipReader reader = new ZipReader(source);
+        ZipWriter writer = new ZipWriter(copy);
+
+        try {
+            for (ZipReader.Entry entry : reader.getEntries().values()) {
+                InputStream in = reader.openStoredData(entry);
+                try {
+                    writer.addEntry(entry.name, entry.method, entry.dosTime, entry.crc, entry.compressedSize, entry.size, in);
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            writer.close();
+            reader.close();
+        }
+
+        ZipFile zip = new ZipFile(copy);
+        try {
+            assertEquals(Arrays.asList("stored/Gr\u00fc\u00dfe.txt", "deflated.txt"), ZipWriterTest.names(zip));
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("deflated.txt").getMethod());
+            assertTrue(Arrays.equals(stored, ZipWriterTest.read(zip, "stored/Gr\u00fc\u00dfe.txt")));
+            assertTrue(Arrays.equals(deflated, ZipWriterTest.read(zip, "deflated.txt")));
+        } finally {
+            zip.close();
+        }
+    }
+
+    public void testRefusesWhatIsNotAZip() throws IOException {
+        FileUtils.writeStringToFile(copy, "not a zip", "UTF-8");
+
+        try {
+            new ZipReader(copy).close();
+            fail("Not a zip file");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] storedData(ZipReader reader, ZipReader.Entry entry) throws IOException {
+        byte[] data = new byte[(int) entry.compressedSize];
+        InputStream in = reader.openStoredData(entry);
+        try {
+            IOUtils.readFully(in, data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+}
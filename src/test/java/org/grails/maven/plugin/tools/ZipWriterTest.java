@@ -0,0 +1,152 @@
+/*
+ * Copyright 2007 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.grails.maven.plugin.tools;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Tests that what ZipWriter writes reads back with java.util.zip.
+ */
+public class ZipWriterTest extends TestCase {
+
+    private File zipFile;
+
+    protected void setUp() throws Exception {
+        zipFile = File.createTempFile("zip-writer", ".zip");
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteQuietly(zipFile);
+    }
+
+    public void testStoredAndDeflatedEntries() throws IOException {
+        byte[] stored = bytes("stored content");
+        byte[] deflated = bytes("deflated content, deflated content, deflated content");
+        long dosTime = ZipWriter.toDosTime(System.currentTimeMillis());
+
+        ZipWriter writer = new ZipWriter(zipFile);
+        writer.addDirectory("WEB-INF", 0);
+        writer.addEntry("WEB-INF/stored.txt", ZipWriter.STORED, dosTime, crc(stored), stored.length, stored);
+        writer.addEntry("WEB-INF/deflated.txt", ZipWriter.DEFLATED, dosTime, crc(deflated), deflated.length, deflate(deflated));
+        writer.addEntry("WEB-INF/streamed.txt", ZipWriter.STORED, dosTime, crc(stored), stored.length, stored.length,
+            new ByteArrayInputStream(stored));
+        writer.close();
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            assertEquals(Arrays.asList("WEB-INF/", "WEB-INF/stored.txt", "WEB-INF/deflated.txt", "WEB-INF/streamed.txt"), names(zip));
+            assertTrue(zip.getEntry("WEB-INF/").isDirectory());
+            assertEquals(ZipEntry.STORED, zip.getEntry("WEB-INF/stored.txt").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("WEB-INF/deflated.txt").getMethod());
+
+            assertTrue(Arrays.equals(stored, read(zip, "WEB-INF/stored.txt")));
+            assertTrue(Arrays.equals(deflated, read(zip, "WEB-INF/deflated.txt")));
+            assertTrue(Arrays.equals(stored, read(zip, "WEB-INF/streamed.txt")));
+        } finally {
+            zip.close();
+        }
+    }
+
+    public void testUtf8Names() throws IOException {
+        byte[] content = bytes("Gr\u00fc\u00dfe");
+
+        ZipWriter writer = new ZipWriter(zipFile);
+        writer.addEntry("i18n/messages_\u65e5\u672c.properties", ZipWriter.STORED, ZipWriter.toDosTime(0), crc(content), content.length, content);
+        writer.close();
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            assertEquals(Collections.singletonList("i18n/messages_\u65e5\u672c.properties"), names(zip));
+            assertTrue(Arrays.equals(content, read(zip, "i18n/messages_\u65e5\u672c.properties")));
+        } finally {
+            zip.close();
+        }
+    }
+
+    public void testStreamedEntryMustHaveAllItsData() throws IOException {
+        ZipWriter writer = new ZipWriter(zipFile);
+
+        try {
+            writer.addEntry("short.txt", ZipWriter.STORED, ZipWriter.toDosTime(0), 0, 10, 10, new ByteArrayInputStream(new byte[5]));
+            fail("A short stream must be refused");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            writer.close();
+        }
+    }
+
+    static byte[] bytes(String text) throws IOException {
+        return text.getBytes("UTF-8");
+    }
+
+    static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+
+        return out.toByteArray();
+    }
+
+    static List<String> names(ZipFile zip) {
+        List<String> names = new ArrayList<String>();
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            names.add(entries.nextElement().getName());
+        }
+        return names;
+    }
+
+    static byte[] read(ZipFile zip, String name) throws IOException {
+        InputStream in = zip.getInputStream(zip.getEntry(name));
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+}